@@ -0,0 +1,37 @@
+package spotify.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import spotify.model.SpotifyPlaybackEntry;
+import spotify.model.StatsCollector;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// One collector fed a whole synthetic history (music, podcasts and skips mixed as in an export)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CollectorBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    @Param({"topStats", "generalStats", "dailyStats", "yearlyStats", "rollupStats"})
+    public String collector;
+
+    private SpotifyPlaybackEntry[] entries;
+
+    @Setup
+    public void setUp() throws IOException {
+        entries = StoredEntries.load(records);
+    }
+
+    @Benchmark
+    public StatsCollector<?> processEntry(EntryCounter counter) {
+        counter.entries += entries.length;
+        return StoredEntries.feed(collector, entries);
+    }
+}
@@ -0,0 +1,50 @@
+package spotify.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import spotify.StatsAggregator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Whole-folder StatsAggregator.computeStats, from reading the export files to finalized stats,
+// on the calling thread alone or split across a pool the way DataService runs it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ComputeStatsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private String folder;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        folder = SyntheticHistory.cachedFolder(records).toString();
+        executor = parallel ? Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) : null;
+        // Ingest logs every file it parses; the forked JVM's stdout would drown the results
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) executor.shutdown();
+    }
+
+    @Benchmark
+    public StatsAggregator.CombinedStatsCollector computeStats(EntryCounter counter) {
+        counter.entries += records;
+        return StatsAggregator.computeStats(folder, executor);
+    }
+}
@@ -0,0 +1,20 @@
+package spotify.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Reported next to the primary score as entries/s when a benchmark runs in throughput mode
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class EntryCounter {
+
+    public long entries;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        entries = 0;
+    }
+}
@@ -0,0 +1,43 @@
+package spotify.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import spotify.model.SpotifyPlaybackEntry;
+import spotify.model.StatsCollector;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// finalizeStats alone, on a collector freshly fed the whole history before every call
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FinalizeBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    @Param({"topStats", "generalStats", "dailyStats", "yearlyStats", "rollupStats"})
+    public String collector;
+
+    private SpotifyPlaybackEntry[] entries;
+    private StatsCollector<?> stats;
+
+    @Setup
+    public void setUp() throws IOException {
+        entries = StoredEntries.load(records);
+    }
+
+    @Setup(Level.Invocation)
+    public void feed() {
+        stats = StoredEntries.feed(collector, entries);
+    }
+
+    @Benchmark
+    public StatsCollector<?> finalizeStats() {
+        stats.finalizeStats();
+        return stats;
+    }
+}
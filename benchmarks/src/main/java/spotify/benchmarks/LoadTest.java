@@ -0,0 +1,342 @@
+package spotify.benchmarks;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import spotify.Main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// HTTP load driver for the REST API. Boots the app in this JVM on a random port (or targets --url),
+// then runs closed-loop users that each upload a generated export and keep reading their stats,
+// with some uploading again. Latencies go into one HdrHistogram per operation:
+//
+//   upload       POST /api/upload until the 202 with the job status
+//   stats-ready  from sending an upload until /api/all-stats first answers 200; this is where
+//                concurrent uploads of different exports wait for DataService's compute permits
+//   all-stats    GET /api/all-stats once ready
+//   top-days     GET /api/top-days once ready
+//
+// java -cp target/benchmarks.jar spotify.benchmarks.LoadTest --users=16 --seconds=60 \
+//     --save=baselines/main.hlog --baseline=baselines/previous.hlog
+//
+// Users send the next request as soon as the last one returns, so latencies queued behind a slow
+// request are not counted (coordinated omission); compare runs at the same --users.
+public class LoadTest {
+
+    private static final String[] OPERATIONS = {"upload", "stats-ready", "all-stats", "top-days"};
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final long READY_POLL_MILLIS = 50;
+
+    private final Options options;
+    private final String baseUrl;
+    private final List<byte[]> exports = new ArrayList<>();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong notReady = new AtomicLong();
+    private long measureFrom;
+    private long measureTo;
+
+    private LoadTest(Options options, String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        PrintStream report = System.out;
+        ConfigurableApplicationContext app = null;
+        String baseUrl = options.url;
+        if (baseUrl == null) {
+            // The app logs every file it parses; only the report should reach the console
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            app = SpringApplication.run(Main.class, "--server.port=0", "--spotify.snapshot.enabled=false",
+                    "--logging.level.root=WARN");
+            baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+        }
+        try {
+            new LoadTest(options, baseUrl).run(report);
+        } finally {
+            if (app != null) app.close();
+        }
+    }
+
+    private void run(PrintStream report) throws Exception {
+        report.printf("Generating %d exports of %d records%n", options.exports, options.records);
+        for (int i = 0; i < options.exports; i++) {
+            exports.add(SyntheticHistory.zippedExport(options.records, SyntheticHistory.SEED + i));
+        }
+
+        report.printf("Running %d users against %s for %ds after %ds warmup, %d%% uploads%n",
+                options.users, baseUrl, options.seconds, options.warmupSeconds, options.uploadPercent);
+        measureFrom = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.warmupSeconds);
+        measureTo = measureFrom + TimeUnit.SECONDS.toMillis(options.seconds);
+
+        ExecutorService users = Executors.newFixedThreadPool(options.users);
+        List<Future<Map<String, Histogram>>> results = new ArrayList<>();
+        for (int user = 0; user < options.users; user++) {
+            int id = user;
+            results.add(users.submit(() -> runUser(id)));
+        }
+        Map<String, Histogram> histograms = newHistograms();
+        for (Future<Map<String, Histogram>> result : results) {
+            result.get().forEach((operation, histogram) -> histograms.get(operation).add(histogram));
+        }
+        users.shutdown();
+
+        histograms.values().forEach(histogram -> {
+            histogram.setStartTimeStamp(measureFrom);
+            histogram.setEndTimeStamp(measureTo);
+        });
+        print(report, histograms);
+        report.printf("%d reads answered 503 while stats were being computed%n", notReady.get());
+        if (failures.get() > 0) {
+            report.printf("%d requests failed or answered an unexpected status%n", failures.get());
+        }
+        writeResults(report, histograms);
+        if (options.baseline != null) {
+            compare(report, readLog(options.baseline), histograms);
+        }
+    }
+
+    private Map<String, Histogram> runUser(int user) throws Exception {
+        Map<String, Histogram> histograms = newHistograms();
+        HttpClient client = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Random random = new Random(SyntheticHistory.SEED + user);
+
+        // Every user starts with its own session, spread over the distinct exports
+        upload(client, exports.get(user % exports.size()), histograms);
+        while (System.currentTimeMillis() < measureTo) {
+            if (random.nextInt(100) < options.uploadPercent) {
+                upload(client, exports.get(random.nextInt(exports.size())), histograms);
+            } else {
+                read(client, random.nextBoolean() ? "all-stats" : "top-days", histograms);
+            }
+        }
+        return histograms;
+    }
+
+    private void upload(HttpClient client, byte[] export, Map<String, Histogram> histograms) throws Exception {
+        String boundary = "----load-test-" + System.nanoTime();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(export.length + 256);
+        body.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"my_spotify_data.zip\"\r\n"
+                + "Content-Type: application/zip\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(export);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+
+        long start = System.nanoTime();
+        long startedAt = System.currentTimeMillis();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 202) {
+            failures.incrementAndGet();
+            return;
+        }
+        record(histograms.get("upload"), startedAt, start);
+
+        // Polled as the frontend does, but faster, so the wait is measured closely
+        HttpRequest poll = statsRequest("all-stats");
+        while (System.currentTimeMillis() < measureTo) {
+            int status = client.send(poll, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status == 200) {
+                record(histograms.get("stats-ready"), startedAt, start);
+                return;
+            }
+            if (status != 503) {
+                failures.incrementAndGet();
+                return;
+            }
+            notReady.incrementAndGet();
+            Thread.sleep(READY_POLL_MILLIS);
+        }
+    }
+
+    private void read(HttpClient client, String operation, Map<String, Histogram> histograms) throws Exception {
+        long start = System.nanoTime();
+        long startedAt = System.currentTimeMillis();
+        int status = client.send(statsRequest(operation), HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 200) {
+            record(histograms.get(operation), startedAt, start);
+        } else if (status == 503) {
+            // The session is being recomputed after an upload, or its stats were evicted
+            notReady.incrementAndGet();
+            Thread.sleep(READY_POLL_MILLIS);
+        } else {
+            failures.incrementAndGet();
+        }
+    }
+
+    private HttpRequest statsRequest(String operation) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/" + operation))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+    }
+
+    // Only operations that start and finish inside the measured window count
+    private void record(Histogram histogram, long startedAt, long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        if (startedAt >= measureFrom && System.currentTimeMillis() <= measureTo) {
+            histogram.recordValue(Math.min(micros, HIGHEST_MICROS));
+        }
+    }
+
+    private static Map<String, Histogram> newHistograms() {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            Histogram histogram = new Histogram(HIGHEST_MICROS, 3);
+            histogram.setTag(operation);
+            histograms.put(operation, histogram);
+        }
+        return histograms;
+    }
+
+    private static void print(PrintStream report, Map<String, Histogram> histograms) {
+        report.printf("%n%-12s %9s %10s %10s %10s %10s %10s%n", "operation", "count", "per sec", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        histograms.forEach((operation, histogram) -> report.printf("%-12s %9d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                operation, histogram.getTotalCount(), throughput(histogram),
+                millis(histogram, 50), millis(histogram, 95), millis(histogram, 99), histogram.getMaxValue() / 1000.0));
+    }
+
+    // Per operation percentile distributions (.hgrm, for the HdrHistogram plotter) and the whole
+    // run as one tagged histogram log, which --save keeps as a baseline for later --baseline runs
+    private void writeResults(PrintStream report, Map<String, Histogram> histograms) throws IOException {
+        Path out = options.out != null ? options.out : Paths.get("target", "load-test", String.valueOf(measureFrom));
+        Files.createDirectories(out);
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            try (PrintStream hgrm = new PrintStream(Files.newOutputStream(out.resolve(entry.getKey() + ".hgrm")))) {
+                entry.getValue().outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+        writeLog(out.resolve("run.hlog"), histograms);
+        report.printf("%nHistograms written to %s%n", out.toAbsolutePath());
+        if (options.save != null) {
+            if (options.save.getParent() != null) Files.createDirectories(options.save.getParent());
+            writeLog(options.save, histograms);
+            report.printf("Baseline saved to %s%n", options.save.toAbsolutePath());
+        }
+    }
+
+    private static void writeLog(Path file, Map<String, Histogram> histograms) throws IOException {
+        try (PrintStream log = new PrintStream(Files.newOutputStream(file))) {
+            HistogramLogWriter writer = new HistogramLogWriter(log);
+            writer.outputLogFormatVersion();
+            writer.outputLegend();
+            for (Histogram histogram : histograms.values()) {
+                writer.outputIntervalHistogram(histogram);
+            }
+        }
+    }
+
+    private static Map<String, Histogram> readLog(Path file) throws IOException {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        HistogramLogReader reader = new HistogramLogReader(file.toFile());
+        while (reader.hasNext()) {
+            Histogram histogram = (Histogram) reader.nextIntervalHistogram();
+            histograms.put(histogram.getTag(), histogram);
+        }
+        return histograms;
+    }
+
+    private static void compare(PrintStream report, Map<String, Histogram> baseline, Map<String, Histogram> current) {
+        report.printf("%nAgainst baseline (current / baseline, change)%n");
+        current.forEach((operation, histogram) -> {
+            Histogram before = baseline.get(operation);
+            if (before == null || before.getTotalCount() == 0 || histogram.getTotalCount() == 0) {
+                report.printf("%-12s no comparable samples%n", operation);
+                return;
+            }
+            report.printf("%-12s per sec %s  p50 %s  p95 %s  p99 %s  max %s%n", operation,
+                    change(throughput(histogram), throughput(before)),
+                    change(millis(histogram, 50), millis(before, 50)),
+                    change(millis(histogram, 95), millis(before, 95)),
+                    change(millis(histogram, 99), millis(before, 99)),
+                    change(histogram.getMaxValue() / 1000.0, before.getMaxValue() / 1000.0));
+        });
+    }
+
+    private static String change(double current, double baseline) {
+        return String.format("%.2f/%.2f (%+.0f%%)", current, baseline, (current - baseline) / baseline * 100);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static double throughput(Histogram histogram) {
+        double seconds = (histogram.getEndTimeStamp() - histogram.getStartTimeStamp()) / 1000.0;
+        return seconds > 0 ? histogram.getTotalCount() / seconds : 0;
+    }
+
+    private static final class Options {
+        int users = 16;
+        int seconds = 30;
+        int warmupSeconds = 5;
+        int records = 20000;
+        int exports = 4;
+        int uploadPercent = 5;
+        String url;
+        Path out;
+        Path save;
+        Path baseline;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value but got " + arg);
+                }
+                String value = arg.substring(equals + 1);
+                switch (arg.substring(2, equals)) {
+                    case "users" -> options.users = Integer.parseInt(value);
+                    case "seconds" -> options.seconds = Integer.parseInt(value);
+                    case "warmup-seconds" -> options.warmupSeconds = Integer.parseInt(value);
+                    case "records" -> options.records = Integer.parseInt(value);
+                    case "exports" -> options.exports = Integer.parseInt(value);
+                    case "upload-percent" -> options.uploadPercent = Integer.parseInt(value);
+                    case "url" -> options.url = value;
+                    case "out" -> options.out = Paths.get(value);
+                    case "save" -> options.save = Paths.get(value);
+                    case "baseline" -> options.baseline = Paths.get(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (options.users < 1 || options.exports < 1 || options.uploadPercent < 0 || options.uploadPercent > 100) {
+                throw new IllegalArgumentException("Need at least one user and export, and an upload percent from 0 to 100");
+            }
+            return options;
+        }
+    }
+}
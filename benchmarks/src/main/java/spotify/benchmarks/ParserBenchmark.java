@@ -0,0 +1,65 @@
+package spotify.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import spotify.model.SpotifyPlaybackEntry;
+import spotify.util.SpotifyEntryParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Parsing one export's worth of records: the org.json path (fromJson) against the streaming path
+// ingest uses (fromParser into one reused entry). Parse cost is linear in records, so 1M is left
+// to the collector and end-to-end benchmarks.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParserBenchmark {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Param({"10000", "100000"})
+    public int records;
+
+    private byte[] content;
+    private JSONObject[] objects;
+
+    @Setup
+    public void setUp() throws IOException {
+        content = SyntheticHistory.jsonArray(records);
+        JSONArray array = new JSONArray(new String(content, StandardCharsets.UTF_8));
+        objects = new JSONObject[array.length()];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = array.getJSONObject(i);
+        }
+    }
+
+    @Benchmark
+    public void fromJson(EntryCounter counter, Blackhole blackhole) {
+        for (JSONObject object : objects) {
+            blackhole.consume(SpotifyEntryParser.fromJson(object));
+        }
+        counter.entries += objects.length;
+    }
+
+    @Benchmark
+    public void fromParser(EntryCounter counter, Blackhole blackhole) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            parser.nextToken();
+            SpotifyPlaybackEntry entry = new SpotifyPlaybackEntry();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                blackhole.consume(SpotifyEntryParser.fromParser(parser, entry));
+                counter.entries++;
+            }
+        }
+    }
+}
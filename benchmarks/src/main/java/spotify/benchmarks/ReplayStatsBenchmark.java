@@ -0,0 +1,53 @@
+package spotify.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import spotify.HistorySnapshot;
+import spotify.IngestProgress;
+import spotify.SnapshotWriter;
+import spotify.StatsAggregator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// StatsAggregator.computeStats replaying a snapshot of the synthetic history on the calling thread.
+// Nothing is parsed, so what is measured is storing each entry and handing it to the collectors.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReplayStatsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    private Path file;
+    private HistorySnapshot snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Ingest logs every file it parses; the forked JVM's stdout would drown the results
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        SnapshotWriter writer = new SnapshotWriter();
+        StatsAggregator.computeStats(SyntheticHistory.cachedFolder(records).toString()).forEachEntry(writer::add);
+        file = Files.createTempFile("spotify-benchmarks", ".snapshot");
+        writer.writeTo(file);
+        snapshot = HistorySnapshot.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public StatsAggregator.CombinedStatsCollector replay(EntryCounter counter) {
+        counter.entries += records;
+        return StatsAggregator.computeStats(snapshot, null, IngestProgress.NONE);
+    }
+}
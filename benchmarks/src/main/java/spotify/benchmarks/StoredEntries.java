@@ -0,0 +1,63 @@
+package spotify.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import spotify.model.DailyStatsCollector;
+import spotify.model.EntryStore;
+import spotify.model.GeneralStatsCollector;
+import spotify.model.RollupStatsCollector;
+import spotify.model.SpotifyPlaybackEntry;
+import spotify.model.StatsCollector;
+import spotify.model.TopStatsCollector;
+import spotify.model.YearlyStatsCollector;
+import spotify.util.SpotifyEntryParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Synthetic entries parsed and stored the way ingest leaves them for the collectors, with refs and
+// dictionary ids filled in. Each is its own instance so a benchmark pays only for the collector.
+final class StoredEntries {
+
+    static final Map<String, Supplier<StatsCollector<?>>> COLLECTORS = Map.of(
+            "topStats", TopStatsCollector::new,
+            "generalStats", GeneralStatsCollector::new,
+            "dailyStats", DailyStatsCollector::new,
+            "yearlyStats", YearlyStatsCollector::new,
+            "rollupStats", RollupStatsCollector::new);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private StoredEntries() {}
+
+    static SpotifyPlaybackEntry[] load(int records) throws IOException {
+        Path dir = SyntheticHistory.cachedFolder(records);
+        EntryStore.Segment segment = new EntryStore().newSegment();
+        List<SpotifyPlaybackEntry> entries = new ArrayList<>(records);
+        for (int file = 0; ; file++) {
+            Path path = dir.resolve("Streaming_History_Audio_" + file + ".json");
+            if (!Files.exists(path)) break;
+            try (JsonParser parser = JSON_FACTORY.createParser(path.toFile())) {
+                parser.nextToken();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    SpotifyPlaybackEntry entry = SpotifyEntryParser.fromParser(parser);
+                    segment.append(entry);
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries.toArray(new SpotifyPlaybackEntry[0]);
+    }
+
+    static StatsCollector<?> feed(String collector, SpotifyPlaybackEntry[] entries) {
+        StatsCollector<?> stats = COLLECTORS.get(collector).get();
+        stats.processBatch(entries, entries.length);
+        return stats;
+    }
+}
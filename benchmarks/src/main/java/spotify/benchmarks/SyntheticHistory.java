@@ -0,0 +1,148 @@
+package spotify.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Seeded generator of extended streaming history records shaped like Spotify's export: mostly
+// music with a skewed artist popularity, about 8% podcast episodes, and a share of short skipped
+// plays. The same seed always yields the same records, so runs are comparable.
+public class SyntheticHistory {
+
+    public static final long SEED = 42;
+    // Spotify splits an export into files of roughly this many records
+    public static final int RECORDS_PER_FILE = 15000;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int ARTISTS = 2000;
+    private static final int ALBUMS_PER_ARTIST = 4;
+    private static final int TRACKS_PER_ALBUM = 10;
+    private static final int SHOWS = 40;
+    private static final String[] PLATFORMS = {"Android OS 12 API 31 (Google, Pixel 6)", "iOS 16.1 (iPhone14,5)", "windows", "web_player"};
+    private static final String[] COUNTRIES = {"US", "US", "US", "CA", "GB"};
+    private static final String[] REASONS_START = {"trackdone", "clickrow", "fwdbtn", "backbtn", "playbtn", "appload", "remote"};
+    private static final String[] REASONS_END = {"trackdone", "fwdbtn", "backbtn", "endplay", "unknown", "logout", "remote"};
+
+    private final Random random;
+    private Instant clock = Instant.parse("2015-03-01T00:00:00Z");
+
+    public SyntheticHistory(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // A folder with records spread over export-sized files, generated once per size and reused
+    public static Path cachedFolder(int records) throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "spotify-benchmarks", records + "-" + SEED);
+        Path complete = dir.resolve(".complete");
+        if (Files.exists(complete)) return dir;
+
+        Files.createDirectories(dir);
+        SyntheticHistory history = new SyntheticHistory(SEED);
+        for (int file = 0, written = 0; written < records; file++) {
+            int count = Math.min(RECORDS_PER_FILE, records - written);
+            try (OutputStream out = Files.newOutputStream(dir.resolve("Streaming_History_Audio_" + file + ".json"))) {
+                history.write(out, count);
+            }
+            written += count;
+        }
+        Files.createFile(complete);
+        return dir;
+    }
+
+    public static byte[] jsonArray(int records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(records * 700);
+        new SyntheticHistory(SEED).write(out, records);
+        return out.toByteArray();
+    }
+
+    // A zip laid out like the archive Spotify sends, as uploaded to /api/upload
+    public static byte[] zippedExport(int records, long seed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(records * 200);
+        SyntheticHistory history = new SyntheticHistory(seed);
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (int file = 0, written = 0; written < records; file++) {
+                int count = Math.min(RECORDS_PER_FILE, records - written);
+                zip.putNextEntry(new ZipEntry("Spotify Extended Streaming History/Streaming_History_Audio_" + file + ".json"));
+                history.write(zip, count);
+                zip.closeEntry();
+                written += count;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Writes count records as one JSON array, continuing the clock from the previous call. The
+    // stream is left open for the caller.
+    public void write(OutputStream out, int count) throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.useDefaultPrettyPrinter();
+            json.writeStartArray();
+            for (int i = 0; i < count; i++) {
+                writeRecord(json);
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private void writeRecord(JsonGenerator json) throws IOException {
+        // About a hundred plays a day, a heavy but realistic listener
+        clock = clock.plus(30 + random.nextInt(1700), ChronoUnit.SECONDS);
+        boolean podcast = random.nextInt(100) < 8;
+        boolean skipped = !podcast && random.nextInt(100) < 20;
+
+        json.writeStartObject();
+        json.writeStringField("ts", clock.toString());
+        json.writeStringField("username", "benchmark");
+        json.writeStringField("platform", PLATFORMS[random.nextInt(PLATFORMS.length)]);
+        json.writeNumberField("ms_played", podcast ? random.nextInt(3600000) : skipped ? random.nextInt(8000) : 30000 + random.nextInt(240000));
+        json.writeStringField("conn_country", COUNTRIES[random.nextInt(COUNTRIES.length)]);
+        json.writeStringField("ip_addr", "192.0.2." + random.nextInt(256));
+        json.writeStringField("user_agent_decrypted", "unknown");
+        if (podcast) {
+            int show = (int) (SHOWS * Math.pow(random.nextDouble(), 2));
+            json.writeNullField("master_metadata_track_name");
+            json.writeNullField("master_metadata_album_artist_name");
+            json.writeNullField("master_metadata_album_album_name");
+            json.writeNullField("spotify_track_uri");
+            json.writeStringField("episode_name", "Show " + show + " Episode " + random.nextInt(300));
+            json.writeStringField("episode_show_name", "Show " + show);
+            json.writeStringField("spotify_episode_uri", "spotify:episode:" + show + "x" + random.nextInt(300));
+        } else {
+            // Cubing skews plays toward a few favourite artists, as real histories are
+            int artist = (int) (ARTISTS * Math.pow(random.nextDouble(), 3));
+            int album = random.nextInt(ALBUMS_PER_ARTIST);
+            int track = random.nextInt(TRACKS_PER_ALBUM);
+            json.writeStringField("master_metadata_track_name", "Track " + track + " of Album " + album + " by Artist " + artist);
+            json.writeStringField("master_metadata_album_artist_name", "Artist " + artist);
+            json.writeStringField("master_metadata_album_album_name", "Album " + album + " by Artist " + artist);
+            json.writeStringField("spotify_track_uri", "spotify:track:" + Long.toString(((long) artist * ALBUMS_PER_ARTIST + album) * TRACKS_PER_ALBUM + track, 36));
+            json.writeNullField("episode_name");
+            json.writeNullField("episode_show_name");
+            json.writeNullField("spotify_episode_uri");
+        }
+        json.writeStringField("reason_start", REASONS_START[random.nextInt(REASONS_START.length)]);
+        json.writeStringField("reason_end", skipped ? "fwdbtn" : REASONS_END[random.nextInt(REASONS_END.length)]);
+        json.writeBooleanField("shuffle", random.nextInt(100) < 40);
+        if (podcast) {
+            json.writeNullField("skipped");
+        } else {
+            json.writeBooleanField("skipped", skipped);
+        }
+        json.writeBooleanField("offline", random.nextInt(100) < 5);
+        json.writeNumberField("offline_timestamp", clock.getEpochSecond());
+        json.writeBooleanField("incognito_mode", false);
+        json.writeEndObject();
+    }
+}
@@ -630,8 +630,36 @@ function DayEntries({ day, entries, dayTotalMs, topStatsData })     {
     );
 }
 
+// Entries of a year are loaded from /api/year-entries a page at a time once the row is expanded
+const YEAR_ENTRIES_PAGE = 1000;
+
 function YearStatRow({ year, data, topStatsData}) {
     const [expanded, setExpanded] = useState(false);
+    const [entries, setEntries] = useState([]);
+    const [totalEntries, setTotalEntries] = useState(null);
+    const [loadingEntries, setLoadingEntries] = useState(false);
+
+    const loadEntries = async () => {
+        setLoadingEntries(true);
+        try {
+            const res = await axios.get('/api/year-entries', {
+                params: { year, offset: entries.length, limit: YEAR_ENTRIES_PAGE },
+            });
+            setEntries(loaded => [...loaded, ...res.data]);
+            setTotalEntries(Number(res.headers['x-total-count'] ?? res.data.length));
+        } catch (err) {
+            console.error(`Failed to load entries for ${year}:`, err);
+        } finally {
+            setLoadingEntries(false);
+        }
+    };
+
+    const toggleExpanded = () => {
+        if (!expanded && totalEntries === null && !loadingEntries) {
+            loadEntries();
+        }
+        setExpanded(!expanded);
+    };
 
     return (
         <Box key={year} style={{ padding: "30px 0 30px 0",}}>
@@ -673,7 +701,7 @@ function YearStatRow({ year, data, topStatsData}) {
                 <div style={{ display: "flex", justifyContent: "center" }}>
                     <ToggleButton
                         expanded={expanded}
-                        onClick={() => setExpanded(!expanded)}
+                        onClick={toggleExpanded}
                         labelOn={"Hide Details"}
                         labelOff={"Show Details"}
                         />
@@ -681,20 +709,33 @@ function YearStatRow({ year, data, topStatsData}) {
             </StyledRow>
         {expanded && (
             <div>
-                {Object.entries(data.entriesOfTheYear || {}).map(([year, entries]) => (
-                    <div key={year}>
-                        {groupByDay(entries).map(({ dayLabel, entries, dayTotalMs }) => (
-                            <DayEntries
-                                key={dayLabel}
-                                day={dayLabel}
-                                entries={entries}
-                                dayTotalMs={dayTotalMs}
-                                topStatsData={topStatsData}
-                            />
-                        ))}
-
+                {groupByDay(entries).map(({ dayLabel, entries, dayTotalMs }) => (
+                    <DayEntries
+                        key={dayLabel}
+                        day={dayLabel}
+                        entries={entries}
+                        dayTotalMs={dayTotalMs}
+                        topStatsData={topStatsData}
+                    />
+                ))}
+                {loadingEntries && <p style={{ textAlign: "center" }}>Loading...</p>}
+                {!loadingEntries && totalEntries !== null && entries.length < totalEntries && (
+                    <div style={{ display: "flex", justifyContent: "center" }}>
+                        <button
+                            onClick={loadEntries}
+                            style={{
+                                margin: "8px auto 8px auto",
+                                backgroundColor: "#007bff",
+                                color: "#fff",
+                                borderRadius: "12px",
+                                cursor: "pointer",
+                                border: "1px solid transparent",
+                            }}
+                        >
+                            {`Load more (${addNumberCommas(totalEntries - entries.length)} left)`}
+                        </button>
                     </div>
-            ))}
+                )}
         </div>
     )}
     </Box>
@@ -980,15 +1021,33 @@ function DataTabs({ topStatsData, topYearsData, topDaysData }) {
     );
 }
 
+// About ten minutes of polling at the server's usual Retry-After of one second
+const MAX_READY_POLLS = 600;
+
 export default function App() {
     const [topStatsData, setTopStatsData] = useState(null)
     const [generalStatsData, setGeneralStatsData] = useState(null)
     const [topYearsData, setTopYearsData] = useState(null)
     const [topDaysData, setTopDaysData] = useState(null)
-
-
+    const [loadError, setLoadError] = useState(null)
+    const [attempt, setAttempt] = useState(0)
 
     useEffect(() => {
+        // Stats are computed in the background after upload; the API answers 503 until they are ready
+        // and an error once computing them has failed, which only a retry starts over
+        const getWhenReady = async (url) => {
+            for (let poll = 0; poll < MAX_READY_POLLS; poll++) {
+                try {
+                    return await axios.get(url)
+                } catch (err) {
+                    if (err.response?.status !== 503) throw err
+                    const retryAfter = Number(err.response.headers['retry-after'] ?? 1)
+                    await new Promise(resolve => setTimeout(resolve, retryAfter * 1000))
+                }
+            }
+            throw new Error('Your stats are taking too long to compile.')
+        }
+
         const fetchAllData = async () => {
             try {
                 const [
@@ -997,10 +1056,10 @@ export default function App() {
                     topYears,
                     topDays
                 ] = await Promise.all([
-                    axios.get('/api/top-stats'),
-                    axios.get('/api/general-stats'),
-                    axios.get('/api/top-years'),
-                    axios.get('/api/top-days')
+                    getWhenReady('/api/top-stats'),
+                    getWhenReady('/api/general-stats'),
+                    getWhenReady('/api/top-years'),
+                    getWhenReady('/api/top-days')
                 ])
 
                 setTopStatsData(topStats.data)
@@ -1009,11 +1068,33 @@ export default function App() {
                 setTopDaysData(topDays.data)
             } catch (err) {
                 console.error('Failed to fetch data:', err)
+                setLoadError(err.response?.data?.error ?? err.message)
             }
         }
 
         fetchAllData()
-    }, [])
+    }, [attempt])
+
+    const retry = async () => {
+        setLoadError(null)
+        try {
+            await axios.post('/api/stats/retry')
+        } catch (err) {
+            setLoadError(err.response?.data ?? err.message)
+            return
+        }
+        setAttempt(attempt + 1)
+    }
+
+    if (loadError) {
+        return (
+            <div style={{ textAlign: 'center', marginTop: '50px' }}>
+                <h2>Your data could not be compiled</h2>
+                <p>{String(loadError)}</p>
+                <button onClick={retry}>Try again</button>
+            </div>
+        );
+    }
 
     if (!topStatsData || !generalStatsData || !topYearsData || !topDaysData) {
         return (
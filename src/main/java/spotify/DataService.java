@@ -1,86 +1,523 @@
 package spotify;
 
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import spotify.model.DistinctCounters;
+import spotify.model.EntryStore;
 import spotify.model.SpotifyPlaybackEntry;
+import spotify.model.TopCounters;
+import spotify.util.ContentDigest;
+import spotify.util.JsonArraySplitter;
 import spotify.util.SpotifyEntryParser;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.StreamReadFeature;
 import java.io.InputStream;
-import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Component
 public class DataService {
 
-    private String currentSessionFolder;
-    private String lastParsedFolder = null;
+    // Sources own their streams; a zip entry stream must stay open for the entries after it
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+    private static final int PROGRESS_BATCH = 4096;
+
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofMinutes(15);
+
+    private final StatsCache statsCache;
+    private final StatsMetrics metrics;
+    private final ParsedFileCache fileCache;
+    private final Map<String, String> sessionPaths = new ConcurrentHashMap<>();
+    // Sessions made by appending an upload to another session, mapped to that base session; their
+    // own path is the appended upload only
+    private final Map<String, String> appendedTo = new ConcurrentHashMap<>();
+    // Where each session's upload was stored, deleted once nothing holds the session any more
+    // Appended sessions mapped to the upload appended, which they hold along with their base
+    private final Map<String, String> uploadedBy = new ConcurrentHashMap<>();
+    private final Map<String, Path> uploadDirs = new ConcurrentHashMap<>();
+    // How many browser sessions and appended sessions hold each session; guarded by this
+    private final Map<String, Integer> holders = new HashMap<>();
+    private final Path snapshotDir;
+    private final Path spillDir;
+    private final ExecutorService ingestExecutor;
+    // Runs each session's computation start to finish; the parsing itself fans out to ingestExecutor
+    private final ExecutorService jobExecutor;
+    // Bounds how many sessions are computed at once, since each holds its entries on the heap
+    private final Semaphore computePermits;
+    // The one computation running per session, joined by everyone else who needs its stats
+    private final Map<String, CompletableFuture<StatsAggregator.CombinedStatsCollector>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, IngestJob> jobsBySession = new ConcurrentHashMap<>();
+
+    public DataService(@Value("${spotify.ingest.parallelism:0}") int parallelism,
+                       @Value("${spotify.cache.max-sessions:16}") int maxCachedSessions,
+                       @Value("${spotify.cache.max-heap-fraction:0.5}") double maxCacheHeapFraction,
+                       @Value("${spotify.cache.max-file-entries:2000000}") long maxCachedFileEntries,
+                       @Value("${spotify.snapshot.enabled:true}") boolean snapshotsEnabled,
+                       @Value("${spotify.snapshot.dir:${java.io.tmpdir}/spotify-snapshots}") String snapshotDir,
+                       @Value("${spotify.stats.distinct-counting:exact}") String distinctCounting,
+                       @Value("${spotify.stats.hll-precision:14}") int hllPrecision,
+                       @Value("${spotify.stats.top-counting:exact}") String topCounting,
+                       @Value("${spotify.stats.top-capacity:64}") int topCapacity,
+                       @Value("${spotify.spill.enabled:true}") boolean spillEnabled,
+                       @Value("${spotify.spill.dir:${java.io.tmpdir}/spotify-spill}") String spillDir,
+                       @Value("${spotify.ingest.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                       @Value("${spotify.ingest.split-min-bytes:8388608}") long splitMinBytes,
+                       @Value("${spotify.ingest.max-inflate-bytes:67108864}") long maxInflateBytes,
+                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                       StatsMetrics metrics) {
+        DistinctCounters.configure(DistinctCounters.Mode.valueOf(distinctCounting.toUpperCase(Locale.ROOT)), hllPrecision);
+        TopCounters.configure(TopCounters.Mode.valueOf(topCounting.toUpperCase(Locale.ROOT)), topCapacity);
+        JsonArraySplitter.configure(splitMinBytes);
+        ZipHistorySource.configure(maxInflateBytes);
+        this.snapshotDir = snapshotsEnabled ? Paths.get(snapshotDir) : null;
+        this.spillDir = spillEnabled ? Paths.get(spillDir) : null;
+        this.fileCache = new ParsedFileCache(maxCachedFileEntries);
+        this.statsCache = new StatsCache(maxCachedSessions, (long) (Runtime.getRuntime().maxMemory() * maxCacheHeapFraction),
+                fileCache::estimatedBytes);
+        this.metrics = metrics;
+        metrics.bindCaches(statsCache, fileCache);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.ingestExecutor = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.jobExecutor = jobThreads(virtualThreads);
+        this.computePermits = new Semaphore(Math.max(1, maxConcurrentJobs));
+    }
+
+    // Jobs mostly wait, on permits, other sessions and the parse pool, so they suit virtual threads.
+    // Those need Java 21 while the app still builds for 17, so they are looked up at runtime.
+    private static ExecutorService jobThreads(boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual threads need Java 21 or later, running ingest jobs on platform threads");
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
 
-    public void loadSessionFolder(String folderPath) {
-        this.currentSessionFolder = folderPath;
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        if (ingestExecutor != null) {
+            ingestExecutor.shutdownNow();
+        }
     }
 
-    public String getCurrentSessionFolder() {
-        return this.currentSessionFolder;
+    // Sessions are keyed by the content digest of the upload, so identical exports share one entry
+    public void registerSession(String sessionKey, String folderPath) {
+        sessionPaths.put(sessionKey, folderPath);
     }
 
-    public synchronized void generateStatsIfNeeded(String folderPath) {
-        if (StatsAggregator.cachedStats == null || !folderPath.equals(lastParsedFolder)) {
-            System.out.println("Parsing new stats for: " + folderPath);
-            StatsAggregator.cachedStats = StatsAggregator.computeStats(folderPath);
-            lastParsedFolder = folderPath;
+    // The upload stored in uploadDir is deleted once the session is released by everyone holding it
+    public void registerUpload(String sessionKey, String path, Path uploadDir) {
+        sessionPaths.put(sessionKey, path);
+        uploadDirs.put(sessionKey, uploadDir);
+    }
+
+    public String getSessionPath(String sessionKey) {
+        return sessionPaths.get(sessionKey);
+    }
+
+    // The appended session gets its own key, derived from both, so snapshots and cached stats of
+    // the base session stay valid for anyone else who uploaded the same export. It holds both of
+    // them, since recomputing it after eviction needs their files.
+    public synchronized String appendSession(String baseKey, String uploadKey, String uploadPath) {
+        String sessionKey = ContentDigest.keyOf((baseKey + "+" + uploadKey).getBytes(StandardCharsets.UTF_8));
+        if (appendedTo.put(sessionKey, baseKey) == null) {
+            holdSession(baseKey);
+            holdSession(uploadKey);
+        }
+        sessionPaths.put(sessionKey, uploadPath);
+        uploadedBy.put(sessionKey, uploadKey);
+        return sessionKey;
+    }
+
+    public synchronized void holdSession(String sessionKey) {
+        holders.merge(sessionKey, 1, Integer::sum);
+    }
+
+    // Once the last holder lets go the session's upload is deleted, after any computation still
+    // reading it has finished. Cached stats and snapshots stay, they are keyed by content.
+    public synchronized void releaseSession(String sessionKey) {
+        Integer held = holders.get(sessionKey);
+        if (held == null) {
+            return;
+        }
+        if (held > 1) {
+            holders.put(sessionKey, held - 1);
+            return;
+        }
+        holders.remove(sessionKey);
+        CompletableFuture<StatsAggregator.CombinedStatsCollector> running = inFlight.get(sessionKey);
+        if (running == null) {
+            forgetSession(sessionKey);
         } else {
-            System.out.println("Using cached stats for: " + folderPath);
+            running.whenComplete((stats, failure) -> forgetSession(sessionKey));
+        }
+    }
+
+    private synchronized void forgetSession(String sessionKey) {
+        if (holders.containsKey(sessionKey)) {
+            // Held again while its computation was finishing
+            return;
+        }
+        sessionPaths.remove(sessionKey);
+        String baseKey = appendedTo.remove(sessionKey);
+        if (baseKey != null) {
+            releaseSession(baseKey);
+            releaseSession(uploadedBy.remove(sessionKey));
+        }
+        Path uploadDir = uploadDirs.remove(sessionKey);
+        if (uploadDir != null) {
+            try (Stream<Path> files = Files.walk(uploadDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+                System.out.println("Deleted upload of released session: " + sessionKey);
+            } catch (IOException e) {
+                System.err.println("Failed to delete upload " + uploadDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Starts computing the session's stats in the background unless that is already happening, and
+    // returns the job reporting on it. Every computation has a job from the moment it starts, so one
+    // started by an append needing its base, or by anyone else, is joined and reported like any other.
+    // A failed job stays the session's answer until restart is asked for, by a retry or a new upload,
+    // so a failure that would only happen again is reported rather than recomputed on every poll.
+    public IngestJob startStatsJob(String sessionKey, boolean restart) {
+        synchronized (inFlight) {
+            IngestJob existing = jobsBySession.get(sessionKey);
+            if (existing != null && existing.getState() == IngestJob.State.FAILED && !restart) {
+                return existing;
+            }
+            CompletableFuture<StatsAggregator.CombinedStatsCollector> stats = statsFuture(sessionKey, IngestProgress.NONE);
+            if (stats.isDone() && !stats.isCompletedExceptionally()) {
+                // Cached already; a job that failed before they were is no longer the answer
+                jobsBySession.remove(sessionKey);
+                IngestJob done = new IngestJob(sessionKey);
+                done.complete();
+                addJob(done);
+                return done;
+            }
+            return jobsBySession.get(sessionKey);
+        }
+    }
+
+    private void addJob(IngestJob job) {
+        jobs.values().removeIf(finished -> finished.finishedLongerAgoThan(FINISHED_JOB_RETENTION));
+        jobs.put(job.getId(), job);
+    }
+
+    public IngestJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    // Never blocks or locks: null means the session's stats are still being computed, or were evicted.
+    // Stats returned are published and never change, however long the caller holds on to them.
+    // This is the lookup counted as a cache hit; everything behind it peeks.
+    public StatsAggregator.CombinedStatsCollector getStatsIfReady(String sessionKey) {
+        if (sessionKey == null) {
+            return null;
+        }
+        return statsCache.get(sessionKey);
+    }
+
+    public StatsCache.Counters getCacheCounters() {
+        return statsCache.getCounters();
+    }
+
+    public ParsedFileCache.Counters getFileCacheCounters() {
+        return fileCache.getCounters();
+    }
+
+    // Blocks until the session's stats are ready, joining the computation if one is running
+    public StatsAggregator.CombinedStatsCollector generateStatsIfNeeded(String sessionKey) {
+        return statsFuture(sessionKey, IngestProgress.NONE).join();
+    }
+
+    // Single flight per session: cached stats complete at once, otherwise every caller gets the
+    // future of the one computation running for that session. Other sessions are never waited on.
+    // The job is registered before the computation can be seen in inFlight, and its state is settled
+    // before the future completes and before it leaves jobsBySession. A computation started here also
+    // reports to dependent, the job of an append waiting for it as its base.
+    private CompletableFuture<StatsAggregator.CombinedStatsCollector> statsFuture(String sessionKey, IngestProgress dependent) {
+        StatsAggregator.CombinedStatsCollector cached = statsCache.peek(sessionKey);
+        if (cached != null) {
+            metrics.statsLookup("hit");
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<StatsAggregator.CombinedStatsCollector> created = new CompletableFuture<>();
+        IngestJob job = new IngestJob(sessionKey);
+        synchronized (inFlight) {
+            CompletableFuture<StatsAggregator.CombinedStatsCollector> running = inFlight.get(sessionKey);
+            if (running != null) {
+                return running;
+            }
+            addJob(job);
+            jobsBySession.put(sessionKey, job);
+            inFlight.put(sessionKey, created);
+        }
+        statsCache.recordMiss();
+        jobExecutor.execute(() -> {
+            try {
+                IngestProgress progress = IngestProgress.both(IngestProgress.both(job, dependent), metrics);
+                StatsAggregator.CombinedStatsCollector stats =
+                        metrics.observeIngest(() -> computeSessionStats(sessionKey, job, progress));
+                job.complete();
+                created.complete(stats);
+                jobsBySession.remove(sessionKey, job);
+            } catch (Throwable e) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                System.err.println("Failed to compute stats for " + sessionKey + ": " + cause.getMessage());
+                job.fail(cause);
+                created.completeExceptionally(e);
+            } finally {
+                inFlight.remove(sessionKey, created);
+            }
+        });
+        return created;
+    }
+
+    private StatsAggregator.CombinedStatsCollector computeSessionStats(String sessionKey, IngestJob job, IngestProgress progress) {
+        // A computation that finished just before this one was started has already cached them
+        StatsAggregator.CombinedStatsCollector cached = statsCache.peek(sessionKey);
+        if (cached != null) {
+            System.out.println("Using cached stats for: " + sessionKey);
+            metrics.statsLookup("hit");
+            return cached;
+        }
+
+        computePermits.acquireUninterruptibly();
+        try {
+            return computeWithPermit(sessionKey, job, progress);
+        } finally {
+            computePermits.release();
+        }
+    }
+
+    private StatsAggregator.CombinedStatsCollector computeWithPermit(String sessionKey, IngestJob job, IngestProgress progress) {
+        StatsAggregator.CombinedStatsCollector stats = null;
+        long start = System.nanoTime();
+        long entriesBefore = 0;
+        String result = "snapshot";
+
+        Path snapshotFile = snapshotDir == null ? null : snapshotDir.resolve(sessionKey.replace("sha256:", "") + ".snapshot");
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                System.out.println("Replaying snapshot for: " + sessionKey);
+                stats = StatsAggregator.computeStats(HistorySnapshot.open(snapshotFile), ingestExecutor, progress);
+            } catch (IOException e) {
+                // Rewritten below once the history has been parsed again
+                System.err.println("Deleting unreadable snapshot " + snapshotFile + ": " + e.getMessage());
+                try {
+                    Files.deleteIfExists(snapshotFile);
+                } catch (IOException deleteFailure) {
+                    System.err.println("Failed to delete snapshot " + snapshotFile + ": " + deleteFailure.getMessage());
+                }
+            }
+        }
+
+        if (stats == null) {
+            String folderPath = sessionPaths.get(sessionKey);
+            if (folderPath == null) {
+                throw new IllegalStateException("Unknown session: " + sessionKey);
+            }
+            String baseKey = appendedTo.get(sessionKey);
+            if (baseKey != null) {
+                // The base session's stats stay cached as they are for anyone else reading them;
+                // the append extends a copy
+                StatsAggregator.CombinedStatsCollector base = baseStats(baseKey, job);
+                start = System.nanoTime();
+                entriesBefore = base.getEntryCount();
+                result = "appended";
+                System.out.println("Appending " + folderPath + " to: " + baseKey);
+                stats = StatsAggregator.appendStats(base, folderPath, progress, fileCache);
+            } else {
+                System.out.println("Parsing new stats for: " + folderPath);
+                stats = StatsAggregator.computeStats(folderPath, ingestExecutor, progress, fileCache);
+                result = "parsed";
+            }
+            if (snapshotFile != null && !stats.isComplete()) {
+                // A restart should try the unreadable files again rather than replay what is missing them
+                System.err.println("Not writing a snapshot, part of the history could not be read for: " + sessionKey);
+            } else if (snapshotFile != null) {
+                SnapshotWriter snapshot = new SnapshotWriter();
+                stats.forEachEntry(snapshot::add);
+                try {
+                    snapshot.writeTo(snapshotFile);
+                } catch (IOException e) {
+                    System.err.println("Failed to write snapshot " + snapshotFile + ": " + e.getMessage());
+                }
+            }
+        }
+
+        if (spillDir != null) {
+            try {
+                long bytes = stats.spill(spillDir);
+                System.out.println("Spilled " + bytes + " bytes of entries for: " + sessionKey);
+            } catch (IOException e) {
+                System.err.println("Keeping entries on the heap, spilling failed: " + e.getMessage());
+            }
         }
+
+        metrics.statsLookup(result);
+        metrics.statsComputed(stats, stats.getEntryCount() - entriesBefore, System.nanoTime() - start);
+        statsCache.put(sessionKey, stats);
+        return stats;
     }
 
-    public static void processSessionFolder(String folderPath, List<Consumer<SpotifyPlaybackEntry>> entryConsumers) {
-        if (folderPath == null) {
-            throw new IllegalArgumentException("folderPath is null");
+    // The base session's stats for an append to extend, computed first if needed. The caller's
+    // permit is given up while waiting, since the base computation may need it. A base computed for
+    // the append reports its progress to the append's job as well.
+    private StatsAggregator.CombinedStatsCollector baseStats(String baseKey, IngestJob job) {
+        StatsAggregator.CombinedStatsCollector base = statsCache.peek(baseKey);
+        if (base != null) {
+            return base;
         }
+        computePermits.release();
+        try {
+            return statsFuture(baseKey, job).join();
+        } finally {
+            computePermits.acquireUninterruptibly();
+        }
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
-        JsonFactory factory = mapper.getFactory();
+    // The consumer is handed one reused entry instance per file
+    public static void processSessionFolder(String folderPath, Consumer<SpotifyPlaybackEntry> entryConsumer) {
+        try (HistorySource source = HistorySource.open(folderPath)) {
+            for (HistorySource.Part part : source.parts()) {
+                processPart(part, entryConsumer, IngestProgress.NONE, null);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading session " + folderPath + ": " + e.getMessage());
+        }
+    }
 
+    // False if any of the part's files could not be read or parsed in full
+    public static boolean processPart(HistorySource.Part part, Consumer<SpotifyPlaybackEntry> entryConsumer,
+                                      IngestProgress progress, ParsedFileCache fileCache) {
+        boolean[] complete = {true};
         try {
-            Files.walk(Paths.get(folderPath))
-                    .filter(Files::isRegularFile)
-                    .forEach(path -> parseFile(path, factory, mapper, entryConsumers));
+            if (fileCache == null) {
+                part.read((fileName, in) -> complete[0] &= parseFile(fileName, in, entryConsumer, progress));
+            } else {
+                complete[0] = readThroughCache(part, entryConsumer, progress, fileCache);
+            }
         } catch (IOException e) {
-            System.err.println("Error walking folder: " + e.getMessage());
+            System.err.println("Error reading history files: " + e.getMessage());
+            complete[0] = false;
+        } finally {
+            progress.partDone();
         }
+        return complete[0];
     }
 
-    private static void parseFile(Path path, JsonFactory factory, ObjectMapper mapper, List<Consumer<SpotifyPlaybackEntry>> entryConsumers) {
-        String fileName = path.getFileName().toString().toLowerCase();
-        if (!fileName.endsWith(".json") || fileName.startsWith("._")) return;
+    // Hashing the raw bytes is far cheaper than parsing them, so the part is read twice: a first pass
+    // streams every file through a digest, and the second parses only the files no earlier upload
+    // contained. While nothing is cached there is nothing to look up, and files are digested as
+    // they are parsed in a single pass. Neither pass holds a whole file in memory.
+    private static boolean readThroughCache(HistorySource.Part part, Consumer<SpotifyPlaybackEntry> entryConsumer,
+                                            IngestProgress progress, ParsedFileCache fileCache) throws IOException {
+        List<String> contentKeys = new ArrayList<>();
+        if (!fileCache.isEmpty()) {
+            part.read((fileName, in) -> {
+                MessageDigest digest = ContentDigest.newDigest();
+                new DigestInputStream(in, digest).transferTo(OutputStream.nullOutputStream());
+                contentKeys.add(ContentDigest.toKey(digest));
+            });
+        }
+
+        Iterator<String> digested = contentKeys.iterator();
+        boolean[] complete = {true};
+        part.read((fileName, in) -> {
+            String contentKey = digested.hasNext() ? digested.next() : null;
+            EntryStore cached = contentKey == null ? null : fileCache.get(contentKey);
+            if (cached != null) {
+                System.out.println("Reusing parsed entries for: " + fileName);
+                cached.replay(entryConsumer);
+                progress.entriesParsed(cached.size());
+                progress.fileDone();
+                return;
+            }
 
+            MessageDigest digest = ContentDigest.newDigest();
+            InputStream digesting = new DigestInputStream(in, digest);
+            EntryStore parsed = new EntryStore();
+            EntryStore.Segment segment = parsed.newSegment();
+            boolean fileComplete = parseFile(fileName, digesting, entry -> {
+                segment.append(entry);
+                entryConsumer.accept(entry);
+            }, progress);
+            complete[0] &= fileComplete;
+            if (fileComplete) {
+                // Whatever follows the closing bracket still belongs to the file's digest
+                digesting.transferTo(OutputStream.nullOutputStream());
+                String parsedKey = ContentDigest.toKey(digest);
+                // Looked up only now in a single pass, which still counts the miss
+                if (contentKey != null || fileCache.get(parsedKey) == null) {
+                    fileCache.put(parsedKey, parsed);
+                }
+            }
+        });
+        return complete[0];
+    }
+
+    private static boolean parseFile(String fileName, InputStream in, Consumer<SpotifyPlaybackEntry> entryConsumer, IngestProgress progress) {
         System.out.println("Parsing: " + fileName);
+        long start = System.nanoTime();
 
-        try (InputStream in = Files.newInputStream(path);
-             JsonParser parser = factory.createParser(in)) {
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
 
             if (parser.nextToken() != JsonToken.START_ARRAY) {
                 System.err.println("Expected JSON array in file: " + fileName);
-                return;
+                progress.fileFailed(fileName, "NotAnArray");
+                return false;
             }
 
+            SpotifyPlaybackEntry entry = new SpotifyPlaybackEntry();
+            int entries = 0;
+            int pending = 0;
             while (parser.nextToken() != JsonToken.END_ARRAY) {
-                ObjectNode node = mapper.readTree(parser);
-                SpotifyPlaybackEntry entry = SpotifyEntryParser.fromJson(new org.json.JSONObject(node.toString()));
-                for (Consumer<SpotifyPlaybackEntry> consumer : entryConsumers) {
-                    consumer.accept(entry);
+                entryConsumer.accept(SpotifyEntryParser.fromParser(parser, entry));
+                entries++;
+                if (++pending == PROGRESS_BATCH) {
+                    progress.entriesParsed(pending);
+                    pending = 0;
                 }
             }
+            progress.entriesParsed(pending);
+            progress.fileParsed(parser.currentLocation().getByteOffset(), entries, System.nanoTime() - start);
+            return true;
 
         } catch (Exception e) {
             System.err.println("Failed to parse " + fileName + ": " + e.getMessage());
+            progress.fileFailed(fileName, e.getClass().getSimpleName());
+            return false;
+        } finally {
+            progress.fileDone();
         }
     }
-}
\ No newline at end of file
+}
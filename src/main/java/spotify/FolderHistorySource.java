@@ -0,0 +1,61 @@
+package spotify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// A previously extracted export; every history file is its own part, or several when it is large.
+// Large files are memory-mapped and their ranges read straight from the mapping.
+public class FolderHistorySource implements HistorySource {
+
+    private final Path folder;
+    private final int maxRanges;
+
+    public FolderHistorySource(Path folder) {
+        this(folder, 1);
+    }
+
+    public FolderHistorySource(Path folder, int maxRanges) {
+        this.folder = folder;
+        this.maxRanges = maxRanges;
+    }
+
+    @Override
+    public List<Part> parts() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(folder)) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(path -> HistorySource.isHistoryFile(path.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+        List<Part> parts = new ArrayList<>();
+        for (Path path : files) {
+            parts.addAll(SplitHistoryFile.parts(path.getFileName().toString(), Files.size(path), maxRanges,
+                    () -> map(path), filePart(path)));
+        }
+        return parts;
+    }
+
+    private static Part filePart(Path path) {
+        return visitor -> {
+            try (InputStream in = Files.newInputStream(path)) {
+                visitor.visit(path.getFileName().toString(), in);
+            }
+        };
+    }
+
+    // The mapping stays valid after the channel is closed, until the buffer itself is collected
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package spotify;
+
+import spotify.model.SpotifyPlaybackEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+// A session's parsed playback history in a compact columnar file, memory-mapped for replay.
+//
+// Layout (big-endian): magic, version, entry count, dictionary size, then the dictionary as
+// length-prefixed UTF-8 strings, then one column after another: epoch-millis timestamps (long),
+// ms played (int), flag bits (byte), and one int column of dictionary ids per string field.
+public class HistorySnapshot {
+
+    static final int MAGIC = 0x53504853; // "SPHS"
+    static final int VERSION = 1;
+    static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    static final int NULL_STRING = -1;
+
+    static final int PLATFORM = 0;
+    static final int COUNTRY = 1;
+    static final int TRACK_NAME = 2;
+    static final int ARTIST_NAME = 3;
+    static final int ALBUM_NAME = 4;
+    static final int TRACK_URI = 5;
+    static final int REASON_START = 6;
+    static final int REASON_END = 7;
+    static final int PODCAST_NAME = 8;
+    static final int EPISODE_NAME = 9;
+    static final int STRING_COLUMNS = 10;
+
+    private static final int SHUFFLE = 1;
+    private static final int SKIPPED = 1 << 1;
+    private static final int OFFLINE = 1 << 2;
+    private static final int INCOGNITO = 1 << 3;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final String[] dictionary;
+    private final int timestampsOffset;
+    private final int msPlayedOffset;
+    private final int flagsOffset;
+    private final int stringsOffset;
+
+    private static final int HEADER_BYTES = 16;
+    // Timestamp, ms played, flags and the string ids
+    private static final int ROW_BYTES = Long.BYTES + Integer.BYTES + 1 + STRING_COLUMNS * Integer.BYTES;
+
+    // Every size and id is checked against the file before anything is allocated or read from it,
+    // so a damaged file is an IOException here rather than a failure halfway through a replay
+    private HistorySnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        long capacity = buffer.capacity();
+        if (capacity < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a playback history snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(8);
+        int dictionarySize = buffer.getInt(12);
+        long columnBytes = (long) count * ROW_BYTES;
+        // Each dictionary string takes at least its length prefix
+        if (count < 0 || dictionarySize < 0 || HEADER_BYTES + (long) dictionarySize * Integer.BYTES + columnBytes > capacity) {
+            throw new IOException("Truncated snapshot, " + count + " entries and " + dictionarySize
+                    + " strings do not fit in " + capacity + " bytes");
+        }
+        this.dictionary = new String[dictionarySize];
+
+        long dictionaryEnd = capacity - columnBytes;
+        int position = HEADER_BYTES;
+        for (int id = 0; id < dictionary.length; id++) {
+            int length = buffer.getInt(position);
+            if (length < 0 || position + 4L + length > dictionaryEnd) {
+                throw new IOException("Corrupt snapshot, string " + id + " runs past the dictionary");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position + 4, bytes);
+            dictionary[id] = new String(bytes, StandardCharsets.UTF_8);
+            position += 4 + length;
+        }
+        this.timestampsOffset = position;
+        this.msPlayedOffset = timestampsOffset + count * Long.BYTES;
+        this.flagsOffset = msPlayedOffset + count * Integer.BYTES;
+        this.stringsOffset = flagsOffset + count;
+
+        long expectedSize = (long) stringsOffset + (long) STRING_COLUMNS * count * Integer.BYTES;
+        if (capacity != expectedSize) {
+            throw new IOException("Truncated snapshot, expected " + expectedSize + " bytes but found " + capacity);
+        }
+        for (int at = stringsOffset; at < capacity; at += Integer.BYTES) {
+            int id = buffer.getInt(at);
+            if (id < NULL_STRING || id >= dictionary.length) {
+                throw new IOException("Corrupt snapshot, string id " + id + " is not in the dictionary");
+            }
+        }
+    }
+
+    public static HistorySnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of " + channel.size() + " bytes is too large to map");
+            }
+            // The mapping stays valid after the channel is closed
+            return new HistorySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Rebuilds rows [from, to) in their original order into one reused instance. Equal strings come
+    // back as one shared instance from the dictionary. Safe to call concurrently for any ranges.
+    public void replay(int from, int to, Consumer<SpotifyPlaybackEntry> consumer) {
+        ByteBuffer columns = buffer.duplicate();
+        SpotifyPlaybackEntry entry = new SpotifyPlaybackEntry();
+        for (int row = from; row < to; row++) {
+
+            long timestamp = columns.getLong(timestampsOffset + row * Long.BYTES);
+            if (timestamp == NULL_TIMESTAMP) {
+                entry.setTimestamp(null);
+            } else {
+                entry.setEpochMillis(timestamp);
+            }
+            entry.setMsPlayed(columns.getInt(msPlayedOffset + row * Integer.BYTES));
+
+            int bits = columns.get(flagsOffset + row);
+            entry.setShuffle((bits & SHUFFLE) != 0);
+            entry.setSkipped((bits & SKIPPED) != 0);
+            entry.setOffline((bits & OFFLINE) != 0);
+            entry.setIncognitoMode((bits & INCOGNITO) != 0);
+
+            entry.setPlatform(string(columns, PLATFORM, row));
+            entry.setCountry(string(columns, COUNTRY, row));
+            entry.setTrackName(string(columns, TRACK_NAME, row));
+            entry.setArtistName(string(columns, ARTIST_NAME, row));
+            entry.setAlbumName(string(columns, ALBUM_NAME, row));
+            entry.setSpotifyTrackUri(string(columns, TRACK_URI, row));
+            entry.setReasonStart(string(columns, REASON_START, row));
+            entry.setReasonEnd(string(columns, REASON_END, row));
+            entry.setPodcastName(string(columns, PODCAST_NAME, row));
+            entry.setPodcastEpisodeName(string(columns, EPISODE_NAME, row));
+
+            consumer.accept(entry);
+        }
+    }
+
+    private String string(ByteBuffer columns, int column, int row) {
+        int id = columns.getInt(stringsOffset + (column * count + row) * Integer.BYTES);
+        return id == NULL_STRING ? null : dictionary[id];
+    }
+
+    static byte flagsOf(SpotifyPlaybackEntry entry) {
+        int bits = 0;
+        if (entry.isShuffle()) bits |= SHUFFLE;
+        if (entry.isSkipped()) bits |= SKIPPED;
+        if (entry.isOffline()) bits |= OFFLINE;
+        if (entry.isIncognitoMode()) bits |= INCOGNITO;
+        return (byte) bits;
+    }
+
+    static String[] stringsOf(SpotifyPlaybackEntry entry) {
+        String[] values = new String[STRING_COLUMNS];
+        values[PLATFORM] = entry.getPlatform();
+        values[COUNTRY] = entry.getCountry();
+        values[TRACK_NAME] = entry.getTrackName();
+        values[ARTIST_NAME] = entry.getArtistName();
+        values[ALBUM_NAME] = entry.getAlbumName();
+        values[TRACK_URI] = entry.getSpotifyTrackUri();
+        values[REASON_START] = entry.getReasonStart();
+        values[REASON_END] = entry.getReasonEnd();
+        values[PODCAST_NAME] = entry.getPodcastName();
+        values[EPISODE_NAME] = entry.getPodcastEpisodeName();
+        return values;
+    }
+}
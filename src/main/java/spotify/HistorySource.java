@@ -0,0 +1,68 @@
+package spotify;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+// An uploaded export, split into parts that can be read independently of each other. Parts are
+// listed in the order a sequential run visits them so partial results can be combined in order.
+// A history file large enough to fill several parts is split into ranges of whole records, each
+// visited as an array of its own.
+public interface HistorySource extends Closeable {
+
+    List<Part> parts() throws IOException;
+
+    interface Part {
+        void read(FileVisitor visitor) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface FileVisitor {
+        void visit(String fileName, InputStream in) throws IOException;
+    }
+
+    static HistorySource open(String sessionPath) throws IOException {
+        return open(sessionPath, 1);
+    }
+
+    // maxRanges caps how many parts one history file is split into
+    static HistorySource open(String sessionPath, int maxRanges) throws IOException {
+        if (sessionPath == null) {
+            throw new IllegalArgumentException("sessionPath is null");
+        }
+        Path path = Paths.get(sessionPath);
+        if (Files.isDirectory(path)) {
+            return new FolderHistorySource(path, maxRanges);
+        }
+        if (isZip(path.getFileName().toString())) {
+            return new ZipHistorySource(path, maxRanges);
+        }
+        throw new IOException("Not a folder or zip archive: " + sessionPath);
+    }
+
+    static boolean isHistoryFile(String entryName) {
+        String fileName = baseName(entryName).toLowerCase();
+        return fileName.endsWith(".json") && !fileName.startsWith("._");
+    }
+
+    static boolean isZip(String entryName) {
+        String fileName = baseName(entryName).toLowerCase();
+        return fileName.endsWith(".zip") && !fileName.startsWith("._");
+    }
+
+    static boolean isIgnored(String entryName) {
+        return entryName.startsWith("__MACOSX") || entryName.startsWith("._");
+    }
+
+    static String baseName(String entryName) {
+        int slash = Math.max(entryName.lastIndexOf('/'), entryName.lastIndexOf('\\'));
+        return entryName.substring(slash + 1);
+    }
+
+    @Override
+    default void close() throws IOException {}
+}
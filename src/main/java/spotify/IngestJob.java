@@ -0,0 +1,84 @@
+package spotify;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// One background stats computation for a session, started at upload time or whenever else its
+// stats were needed and not cached.
+public class IngestJob implements IngestProgress {
+
+    public enum State { RUNNING, DONE, FAILED }
+
+    public record Status(String jobId, State state, int filesDone, int partsDone, int partsTotal,
+                         long entriesProcessed, long entriesPerSecond, long elapsedMillis,
+                         Long etaMillis, String error) {}
+
+    private final String id = UUID.randomUUID().toString();
+    private final String sessionKey;
+    private final long startedAt = System.nanoTime();
+    private volatile long finishedAt;
+    private volatile State state = State.RUNNING;
+    private volatile String error;
+
+    private final AtomicInteger partsTotal = new AtomicInteger();
+    private final AtomicInteger partsDone = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final LongAdder entriesProcessed = new LongAdder();
+
+    public IngestJob(String sessionKey) {
+        this.sessionKey = sessionKey;
+    }
+
+    public String getId() { return id; }
+    public String getSessionKey() { return sessionKey; }
+    public State getState() { return state; }
+
+    @Override
+    public void partsFound(int parts) { partsTotal.addAndGet(parts); }
+
+    @Override
+    public void partDone() { partsDone.incrementAndGet(); }
+
+    @Override
+    public void fileDone() { filesDone.incrementAndGet(); }
+
+    @Override
+    public void entriesParsed(int entries) { entriesProcessed.add(entries); }
+
+    void complete() {
+        finishedAt = System.nanoTime();
+        state = State.DONE;
+    }
+
+    void fail(Throwable cause) {
+        finishedAt = System.nanoTime();
+        error = cause.getMessage();
+        state = State.FAILED;
+    }
+
+    boolean finishedLongerAgoThan(Duration retention) {
+        return state != State.RUNNING && System.nanoTime() - finishedAt > retention.toNanos();
+    }
+
+    public Status getStatus() {
+        State current = state;
+        long end = current == State.RUNNING ? System.nanoTime() : finishedAt;
+        long elapsedMillis = Math.max(1, (end - startedAt) / 1_000_000);
+        long entries = entriesProcessed.sum();
+        int done = partsDone.get();
+        int total = partsTotal.get();
+
+        // Parts are roughly equal in size for Spotify exports, so the part rate predicts the rest
+        Long eta = null;
+        if (current == State.DONE) {
+            eta = 0L;
+        } else if (current == State.RUNNING && done > 0 && total >= done) {
+            eta = elapsedMillis * (total - done) / done;
+        }
+
+        return new Status(id, current, filesDone.get(), done, total, entries,
+                entries * 1000 / elapsedMillis, elapsedMillis, eta, error);
+    }
+}
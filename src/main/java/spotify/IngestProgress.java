@@ -0,0 +1,61 @@
+package spotify;
+
+// Receives progress callbacks from ingest workers; implementations must be thread-safe.
+public interface IngestProgress {
+
+    IngestProgress NONE = new IngestProgress() {};
+
+    default void partsFound(int parts) {}
+
+    default void partDone() {}
+
+    default void fileDone() {}
+
+    default void entriesParsed(int entries) {}
+
+    // A history file was parsed to its end
+    default void fileParsed(long bytes, int entries, long nanos) {}
+
+    // A history file could not be parsed; reason is short and bounded, e.g. an exception class name
+    default void fileFailed(String fileName, String reason) {}
+
+    static IngestProgress both(IngestProgress first, IngestProgress second) {
+        return new IngestProgress() {
+            @Override
+            public void partsFound(int parts) {
+                first.partsFound(parts);
+                second.partsFound(parts);
+            }
+
+            @Override
+            public void partDone() {
+                first.partDone();
+                second.partDone();
+            }
+
+            @Override
+            public void fileDone() {
+                first.fileDone();
+                second.fileDone();
+            }
+
+            @Override
+            public void entriesParsed(int entries) {
+                first.entriesParsed(entries);
+                second.entriesParsed(entries);
+            }
+
+            @Override
+            public void fileParsed(long bytes, int entries, long nanos) {
+                first.fileParsed(bytes, entries, nanos);
+                second.fileParsed(bytes, entries, nanos);
+            }
+
+            @Override
+            public void fileFailed(String fileName, String reason) {
+                first.fileFailed(fileName, reason);
+                second.fileFailed(fileName, reason);
+            }
+        };
+    }
+}
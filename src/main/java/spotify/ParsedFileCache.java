@@ -0,0 +1,74 @@
+package spotify;
+
+import spotify.model.EntryStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Parsed entries of individual history files keyed by the file's content digest, so a re-upload
+// or an export that shares files with an earlier one replays them instead of parsing again.
+// Each file's entries are kept in a small EntryStore of their own, a few dozen bytes per entry;
+// StatsCache counts them against the same heap budget as the cached sessions.
+public class ParsedFileCache {
+
+    public record Counters(long hits, long misses, long evictions, int files, long entries, long estimatedBytes,
+                           long maxEntries) {}
+
+    private final long maxEntries;
+    private final LinkedHashMap<String, EntryStore> files = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalEntries = 0;
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ParsedFileCache(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public EntryStore get(String contentKey) {
+        EntryStore entries;
+        synchronized (this) {
+            entries = files.get(contentKey);
+        }
+        (entries != null ? hits : misses).incrementAndGet();
+        return entries;
+    }
+
+    public synchronized void put(String contentKey, EntryStore entries) {
+        int size = entries.size();
+        if (size > maxEntries) return;
+
+        EntryStore previous = files.put(contentKey, entries);
+        if (previous != null) {
+            totalEntries -= previous.size();
+            totalBytes -= previous.estimatedRetainedBytes();
+        }
+        totalEntries += size;
+        totalBytes += entries.estimatedRetainedBytes();
+
+        Iterator<Map.Entry<String, EntryStore>> eldest = files.entrySet().iterator();
+        while (totalEntries > maxEntries) {
+            EntryStore evicted = eldest.next().getValue();
+            totalEntries -= evicted.size();
+            totalBytes -= evicted.estimatedRetainedBytes();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    public synchronized long estimatedBytes() {
+        return totalBytes;
+    }
+
+    public synchronized Counters getCounters() {
+        return new Counters(hits.get(), misses.get(), evictions.get(), files.size(), totalEntries, totalBytes, maxEntries);
+    }
+}
@@ -0,0 +1,119 @@
+package spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import spotify.util.ContentDigest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Stats endpoint bodies rendered to gzipped JSON once per computed stats version, so repeated
+// requests for the same view skip Jackson entirely. Evicted least-recently-used first once the
+// stored bytes go over budget.
+public class ResponseCache {
+
+    public record Counters(long hits, long misses, long evictions, int responses, long bytes, long maxBytes) {}
+
+    public record Rendered(byte[] gzipped) {
+
+        // Inflates through a small buffer, so plain clients never cost a full uncompressed copy
+        public void writeUncompressed(OutputStream out) throws IOException {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped), 1 << 13)) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final StatsMetrics metrics;
+    private final long maxBytes;
+    // Version numbers start over with the process and may then name other stats, so tags of an
+    // earlier run must not match
+    private final String instance = UUID.randomUUID().toString();
+    private final LinkedHashMap<String, Rendered> responses = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResponseCache(ObjectMapper objectMapper, StatsMetrics metrics, long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.maxBytes = maxBytes;
+    }
+
+    // A strong tag for one representation of a view: it names the session, view and stats version
+    // rather than the bytes, so a conditional request is answered before anything is rendered. The
+    // gzip and identity bodies differ, so they get different tags.
+    public String etag(String sessionKey, String view, long version, boolean gzip) {
+        MessageDigest digest = ContentDigest.newDigest();
+        digest.update((instance + "/" + sessionKey + "/" + view + "@" + version).getBytes(StandardCharsets.UTF_8));
+        return '"' + HexFormat.of().formatHex(digest.digest(), 0, 16) + (gzip ? "-gz" : "") + '"';
+    }
+
+    // A new version is a new key, so bodies of replaced stats simply age out
+    public Rendered get(String sessionKey, String view, long version, Supplier<?> body) {
+        String key = sessionKey + "/" + view + "@" + version;
+        Rendered rendered;
+        synchronized (this) {
+            rendered = responses.get(key);
+        }
+        if (rendered != null) {
+            hits.incrementAndGet();
+            return rendered;
+        }
+
+        misses.incrementAndGet();
+        // Rendered outside the lock; two concurrent misses for one key just render twice
+        rendered = metrics.renderTimer(view, "cached").record(() -> render(body.get()));
+        put(key, rendered);
+        return rendered;
+    }
+
+    private Rendered render(Object body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+            try (GZIPOutputStream out = new GZIPOutputStream(bytes, 1 << 16)) {
+                objectMapper.writeValue(out, body);
+            }
+            return new Rendered(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void put(String key, Rendered rendered) {
+        if (rendered.gzipped().length > maxBytes) return;
+
+        Rendered previous = responses.put(key, rendered);
+        if (previous != null) {
+            totalBytes -= previous.gzipped().length;
+        }
+        totalBytes += rendered.gzipped().length;
+
+        Iterator<Map.Entry<String, Rendered>> eldest = responses.entrySet().iterator();
+        while (totalBytes > maxBytes) {
+            totalBytes -= eldest.next().getValue().gzipped().length;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized Counters getCounters() {
+        return new Counters(hits.get(), misses.get(), evictions.get(), responses.size(), totalBytes, maxBytes);
+    }
+}
@@ -0,0 +1,109 @@
+package spotify;
+
+import spotify.model.SpotifyPlaybackEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Accumulates entries column by column so they can be written as a HistorySnapshot. Fed from a
+// finished session's EntryStore, which already holds them in order.
+public class SnapshotWriter {
+
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    private int count = 0;
+    private long[] timestamps = new long[1024];
+    private int[] msPlayed = new int[1024];
+    private byte[] flags = new byte[1024];
+    private final int[][] strings = new int[HistorySnapshot.STRING_COLUMNS][1024];
+    // Set once an entry cannot be represented exactly; such a session is simply not snapshotted
+    private boolean unrepresentable = false;
+
+    public void add(SpotifyPlaybackEntry entry) {
+        ensureCapacity(count + 1);
+
+        long timestamp = HistorySnapshot.NULL_TIMESTAMP;
+        if (entry.isTimestampExact()) {
+            timestamp = entry.getEpochMillis();
+        } else if (entry.getTimestamp() != null) {
+            unrepresentable = true;
+        }
+        timestamps[count] = timestamp;
+        msPlayed[count] = entry.getMsPlayed();
+        flags[count] = HistorySnapshot.flagsOf(entry);
+
+        String[] values = HistorySnapshot.stringsOf(entry);
+        for (int column = 0; column < values.length; column++) {
+            strings[column][count] = idOf(values[column]);
+        }
+        count++;
+    }
+
+    // Writes to a sibling temp file first so a crash never leaves a truncated snapshot behind
+    public boolean writeTo(Path target) throws IOException {
+        if (unrepresentable) {
+            System.err.println("Skipping snapshot, timestamps would not round-trip: " + target);
+            return false;
+        }
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(HistorySnapshot.MAGIC);
+            out.writeInt(HistorySnapshot.VERSION);
+            out.writeInt(count);
+            out.writeInt(dictionary.size());
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int row = 0; row < count; row++) out.writeLong(timestamps[row]);
+            for (int row = 0; row < count; row++) out.writeInt(msPlayed[row]);
+            out.write(flags, 0, count);
+            for (int[] column : strings) {
+                for (int row = 0; row < count; row++) out.writeInt(column[row]);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private int idOf(String value) {
+        if (value == null) return HistorySnapshot.NULL_STRING;
+        Integer id = dictionaryIds.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            dictionaryIds.put(value, id);
+            dictionary.add(value);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= timestamps.length) return;
+        int capacity = Math.max(required, timestamps.length * 2);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        msPlayed = Arrays.copyOf(msPlayed, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        for (int column = 0; column < strings.length; column++) {
+            strings[column] = Arrays.copyOf(strings[column], capacity);
+        }
+    }
+}
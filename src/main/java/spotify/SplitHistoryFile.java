@@ -0,0 +1,70 @@
+package spotify;
+
+import spotify.util.JsonArraySplitter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// A large history file read as several parts, each a run of whole records handed over as an array
+// of its own, so one file can be parsed on several workers. Whichever part is read first loads the
+// content and finds the record boundaries for all of them.
+final class SplitHistoryFile {
+
+    interface Loader {
+        ByteBuffer load() throws IOException;
+    }
+
+    private final String fileName;
+    private final Loader loader;
+    private final int ranges;
+    private ByteBuffer content;
+    private List<JsonArraySplitter.Range> split;
+
+    private SplitHistoryFile(String fileName, Loader loader, int ranges) {
+        this.fileName = fileName;
+        this.loader = loader;
+        this.ranges = ranges;
+    }
+
+    // Just whole when the file is too small to split into ranges of the configured minimum size
+    static List<HistorySource.Part> parts(String fileName, long size, int maxRanges, Loader loader, HistorySource.Part whole) {
+        long ranges = Math.min(maxRanges, size / JsonArraySplitter.minRangeBytes());
+        if (ranges <= 1 || size > Integer.MAX_VALUE) {
+            return List.of(whole);
+        }
+        SplitHistoryFile file = new SplitHistoryFile(fileName, loader, (int) ranges);
+        List<HistorySource.Part> parts = new ArrayList<>();
+        for (int i = 0; i < ranges; i++) {
+            int range = i;
+            parts.add(visitor -> file.read(range, visitor));
+        }
+        return parts;
+    }
+
+    private void read(int range, HistorySource.FileVisitor visitor) throws IOException {
+        ByteBuffer json;
+        List<JsonArraySplitter.Range> split;
+        synchronized (this) {
+            if (content == null) {
+                content = loader.load();
+                this.split = JsonArraySplitter.split(content, ranges);
+            }
+            json = content;
+            split = this.split;
+        }
+
+        if (split == null || split.isEmpty()) {
+            // Not a plain array of records; the first part hands over the file as it is
+            if (range == 0) {
+                visitor.visit(fileName, JsonArraySplitter.stream(json));
+            }
+            return;
+        }
+        if (range < split.size()) {
+            visitor.visit(fileName + " [" + (range + 1) + "/" + split.size() + "]",
+                    JsonArraySplitter.rangeAsArray(json, split.get(range)));
+        }
+    }
+}
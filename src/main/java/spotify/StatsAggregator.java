@@ -1,53 +1,410 @@
 package spotify;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import spotify.model.EntryStore;
+import spotify.model.PlaybackKeys;
+import spotify.model.StringDictionary;
 import spotify.model.TopStatsCollector;
 import spotify.model.GeneralStatsCollector;
 import spotify.model.DailyStatsCollector;
 import spotify.model.YearlyStatsCollector;
+import spotify.model.RollupStatsCollector;
+import spotify.model.SpotifyPlaybackEntry;
+import spotify.model.StatsCollector;
 import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Component
 public class StatsAggregator {
-    public static CombinedStatsCollector cachedStats = null;
+    private static final Set<String> BUILT_IN_COLLECTORS = Set.of("topStats", "generalStats", "dailyStats", "yearlyStats", "rollupStats");
+    private static final int SNAPSHOT_RANGES = 64;
+    private static final int SNAPSHOT_RANGE_MIN_ROWS = 4096;
+    private static volatile Map<String, Supplier<? extends StatsCollector<?>>> registeredCollectors = Map.of();
+    private static final AtomicLong VERSIONS = new AtomicLong();
 
-    public CombinedStatsCollector getStats() { return cachedStats; }
+    static {
+        registerCollector("topStats", TopStatsCollector::new);
+        registerCollector("generalStats", GeneralStatsCollector::new);
+        registerCollector("dailyStats", DailyStatsCollector::new);
+        registerCollector("yearlyStats", YearlyStatsCollector::new);
+        registerCollector("rollupStats", RollupStatsCollector::new);
+    }
+
+    // Collectors registered after the built-in ones are run alongside them on every computation
+    // and show up in /api/all-stats under their registered name.
+    public static synchronized void registerCollector(String name, Supplier<? extends StatsCollector<?>> supplier) {
+        Map<String, Supplier<? extends StatsCollector<?>>> updated = new LinkedHashMap<>(registeredCollectors);
+        updated.put(name, supplier);
+        registeredCollectors = Collections.unmodifiableMap(updated);
+    }
+
+    public record CollectorTiming(long processNanos, long finalizeNanos) {}
+
+    // Stores every entry it is fed in the session's EntryStore before the collectors see it; the
+    // collectors of all parts of one session share that store, so their ids and refs agree.
+    // Collectors get the stored entries BATCH at a time, each copied as stored into one of a ring of
+    // reused instances, so each runs its own loop over a batch instead of all of them taking turns
+    // on every entry.
+    // Published stats are read-only and safe to share between any number of readers.
+    public static class CombinedStatsCollector implements StatsCollector<CombinedStatsCollector> {
+        private static final int BATCH = 256;
+
+        private final Map<String, StatsCollector<?>> collectors;
+        private final String[] names;
+        private final StatsCollector<?>[] pipeline;
+        private final long[] processNanos;
+        private SpotifyPlaybackEntry[] batch;
+        // Entries at the front of batch that no collector has seen yet
+        private int batched;
+        private Map<String, CollectorTiming> lastTimings = Map.of();
+        private final EntryStore store;
+        // This collector's entries in order, including those of the collectors combined into it
+        private final List<EntryStore.Segment> segments = new ArrayList<>();
+        private EntryStore.Segment appending;
+        // Identifies one finalized state of the stats, e.g. to key rendered responses
+        private volatile long version;
+        // Set once the stats are handed to readers; from then on they are never changed
+        private volatile boolean published;
+        // Kept up to date as entries are stored, so an append can tell which of its entries are new
+        private PlaybackKeys playbackKeys = new PlaybackKeys();
+        // False once a part of the history could not be read; such stats are never snapshotted
+        private boolean complete = true;
+
+        CombinedStatsCollector(Map<String, Supplier<? extends StatsCollector<?>>> suppliers, EntryStore store) {
+            this(store, instantiate(suppliers));
+        }
+
+        private CombinedStatsCollector(EntryStore store, Map<String, StatsCollector<?>> collectors) {
+            this.collectors = collectors;
+            this.names = collectors.keySet().toArray(new String[0]);
+            this.pipeline = collectors.values().toArray(new StatsCollector<?>[0]);
+            this.processNanos = new long[pipeline.length];
+            this.store = store;
+        }
+
+        CombinedStatsCollector(EntryStore store) {
+            this(registeredCollectors, store);
+        }
+
+        CombinedStatsCollector() {
+            this(new EntryStore());
+        }
+
+        private static Map<String, StatsCollector<?>> instantiate(Map<String, Supplier<? extends StatsCollector<?>>> suppliers) {
+            Map<String, StatsCollector<?>> collectors = new LinkedHashMap<>();
+            suppliers.forEach((name, supplier) -> collectors.put(name, supplier.get()));
+            return collectors;
+        }
+
+        @Override
+        public void processEntry(SpotifyPlaybackEntry entry) {
+            if (appending == null) {
+                appending = store.newSegment();
+                segments.add(appending);
+            }
+            appending.append(entry);
+            playbackKeys.add(entry.getEpochMillis(), entry.getTrackUriId());
+            if (batch == null) {
+                batch = new SpotifyPlaybackEntry[BATCH];
+                for (int i = 0; i < BATCH; i++) batch[i] = new SpotifyPlaybackEntry();
+            }
+            // The feeder reuses its instance for the next record, so the batch keeps a copy
+            batch[batched].copyFrom(entry);
+            if (++batched == BATCH) {
+                flush();
+            }
+        }
+
+        // Hands the entries fed since the last flush to every collector in turn
+        private void flush() {
+            if (batched == 0) return;
+            for (int i = 0; i < pipeline.length; i++) {
+                long start = System.nanoTime();
+                pipeline[i].processBatch(batch, batched);
+                processNanos[i] += System.nanoTime() - start;
+            }
+            batched = 0;
+        }
+
+        @Override
+        public void combine(CombinedStatsCollector other) {
+            checkNotPublished();
+            flush();
+            other.flush();
+            complete &= other.complete;
+            collectors.forEach((name, collector) -> combineUnchecked(collector, other.collectors.get(name)));
+            for (int i = 0; i < names.length; i++) {
+                for (int j = 0; j < other.names.length; j++) {
+                    if (other.names[j].equals(names[i])) processNanos[i] += other.processNanos[j];
+                }
+            }
+            segments.addAll(other.segments);
+            if (playbackKeys.isEmpty()) {
+                playbackKeys = other.playbackKeys;
+            } else {
+                playbackKeys.addAll(other.playbackKeys);
+            }
+            appending = null;
+        }
+
+        @Override
+        public void finalizeStats() {
+            checkNotPublished();
+            flush();
+            Map<String, CollectorTiming> timings = new LinkedHashMap<>();
+            for (int i = 0; i < pipeline.length; i++) {
+                long start = System.nanoTime();
+                pipeline[i].finalizeStats();
+                timings.put(names[i], new CollectorTiming(processNanos[i], System.nanoTime() - start));
+            }
+            Arrays.fill(processNanos, 0);
+            lastTimings = Collections.unmodifiableMap(timings);
+            version = VERSIONS.incrementAndGet();
+        }
+
+        // The copy shares the store, which only ever grows: its own entries go into new segments that
+        // the original never refers to. Playback keys are layered over the original's, but every
+        // collector is deep copied, which costs in proportion to the distinct tracks, artists,
+        // albums and days seen so far.
+        @Override
+        public CombinedStatsCollector copy() {
+            flush();
+            Map<String, StatsCollector<?>> copies = new LinkedHashMap<>();
+            collectors.forEach((name, collector) -> {
+                StatsCollector<?> copy = collector.copy();
+                if (copy == null) {
+                    Supplier<? extends StatsCollector<?>> supplier = registeredCollectors.get(name);
+                    if (supplier == null) {
+                        throw new IllegalStateException("Collector " + name + " can neither be copied nor rebuilt");
+                    }
+                    copy = supplier.get();
+                    forEachEntry(copy);
+                }
+                copies.put(name, copy);
+            });
+            CombinedStatsCollector copy = new CombinedStatsCollector(store, copies);
+            copy.segments.addAll(segments);
+            copy.version = version;
+            copy.playbackKeys = playbackKeys.copy();
+            copy.complete = complete;
+            return copy;
+        }
+
+        void incomplete() {
+            complete = false;
+        }
+
+        @JsonIgnore
+        public boolean isComplete() { return complete; }
+
+        // Entries of this session only; appended sessions share their base's store with each other
+        @JsonIgnore
+        public int getEntryCount() {
+            int count = 0;
+            for (EntryStore.Segment segment : segments) {
+                count += segment.size();
+            }
+            return count;
+        }
+
+        // Spills this session's segments; segments other sessions may still be appending to stay put
+        public long spill(Path dir) throws IOException {
+            flush();
+            return store.spill(dir, segments);
+        }
+
+        void publish() {
+            published = true;
+        }
+
+        private void checkNotPublished() {
+            if (published) {
+                throw new IllegalStateException("Published stats are never changed; append to a copy");
+            }
+        }
+
+        // Per collector, the time spent processing the entries fed since the previous finalize and
+        // the time the last finalize took
+        @JsonIgnore
+        public Map<String, CollectorTiming> getLastTimings() { return lastTimings; }
+
+        @JsonIgnore
+        public long getVersion() { return version; }
 
-    public static class CombinedStatsCollector {
-        public TopStatsCollector topStats;
-        public GeneralStatsCollector generalStats;
-        DailyStatsCollector dailyStats;
-        YearlyStatsCollector yearlyStats;
+        @Override
+        public long estimatedRetainedBytes() {
+            long bytes = store.estimatedRetainedBytes(segments);
+            for (StatsCollector<?> collector : pipeline) {
+                bytes += collector.estimatedRetainedBytes();
+            }
+            return bytes + playbackKeys.estimatedRetainedBytes();
+        }
+
+        @JsonIgnore
+        public EntryStore getEntryStore() { return store; }
+
+        // Replays the session's entries in their original order through one reused instance
+        public void forEachEntry(Consumer<SpotifyPlaybackEntry> consumer) {
+            for (EntryStore.Segment segment : segments) {
+                segment.replay(consumer);
+            }
+        }
 
-        public CombinedStatsCollector(TopStatsCollector topStats, GeneralStatsCollector generalStats, DailyStatsCollector dailyStats, YearlyStatsCollector yearlyStats) {
-            this.topStats = topStats;
-            this.generalStats = generalStats;
-            this.dailyStats = dailyStats;
-            this.yearlyStats = yearlyStats;
+        @SuppressWarnings("unchecked")
+        private static <C extends StatsCollector<C>> void combineUnchecked(StatsCollector<?> target, StatsCollector<?> source) {
+            ((C) target).combine((C) source);
         }
 
-        public TopStatsCollector getTopStats() { return topStats; }
-        public GeneralStatsCollector getGeneralStats() { return generalStats; }
-        public DailyStatsCollector getDailyStats() { return dailyStats; }
-        public YearlyStatsCollector getYearlyStats() { return yearlyStats; }
+        @SuppressWarnings("unchecked")
+        public <C extends StatsCollector<C>> C getCollector(String name) { return (C) collectors.get(name); }
+
+        public TopStatsCollector getTopStats() { return getCollector("topStats"); }
+        public GeneralStatsCollector getGeneralStats() { return getCollector("generalStats"); }
+        public DailyStatsCollector getDailyStats() { return getCollector("dailyStats"); }
+        public YearlyStatsCollector getYearlyStats() { return getCollector("yearlyStats"); }
+        // Only queried through /api/range-stats, never sent whole
+        @JsonIgnore
+        public RollupStatsCollector getRollupStats() { return getCollector("rollupStats"); }
+
+        @JsonAnyGetter
+        public Map<String, StatsCollector<?>> getAdditionalStats() {
+            Map<String, StatsCollector<?>> additional = new LinkedHashMap<>(collectors);
+            additional.keySet().removeAll(BUILT_IN_COLLECTORS);
+            return additional;
+        }
 
     }
 
     public static CombinedStatsCollector computeStats(String folderPath) {
-        TopStatsCollector topStats = new TopStatsCollector();
-        GeneralStatsCollector generalStats = new GeneralStatsCollector();
-        DailyStatsCollector dailyStats = new DailyStatsCollector();
-        YearlyStatsCollector yearlyStats = new YearlyStatsCollector();
-
-        DataService.processSessionFolder(folderPath, List.of(
-                topStats::processEntry,
-                generalStats::processEntry,
-                dailyStats::processEntry,
-                yearlyStats::processEntry
-        ));
-        generalStats.finalizeStats();
-        dailyStats.finalizeStats();
-
-        return new CombinedStatsCollector(topStats, generalStats, dailyStats, yearlyStats);
+        return computeStats(folderPath, null, IngestProgress.NONE, null);
+    }
+
+    public static CombinedStatsCollector computeStats(String folderPath, ExecutorService executor) {
+        return computeStats(folderPath, executor, IngestProgress.NONE, null);
+    }
+
+    // fileCache may be null to always parse every file
+    public static CombinedStatsCollector computeStats(String folderPath, ExecutorService executor, IngestProgress progress,
+                                                      ParsedFileCache fileCache) {
+        try (HistorySource source = HistorySource.open(folderPath, splitRanges(executor))) {
+            List<EntryFeed> feeds = new ArrayList<>();
+            for (HistorySource.Part part : source.parts()) {
+                feeds.add(consumer -> DataService.processPart(part, consumer, progress, fileCache));
+            }
+            return computeStats(feeds, executor, progress);
+        } catch (IOException e) {
+            System.err.println("Error reading session " + folderPath + ": " + e.getMessage());
+            CombinedStatsCollector empty = new CombinedStatsCollector();
+            empty.incomplete();
+            empty.finalizeStats();
+            return empty;
+        }
+    }
+
+    // Large files are split into up to one range per worker, so even a single file uses them all;
+    // sequential runs read every file whole
+    private static int splitRanges(ExecutorService executor) {
+        if (executor == null) return 1;
+        return executor instanceof ForkJoinPool pool ? pool.getParallelism() : Runtime.getRuntime().availableProcessors();
+    }
+
+    // Replays a snapshot instead of parsing; rows are split into one range per worker
+    public static CombinedStatsCollector computeStats(HistorySnapshot snapshot, ExecutorService executor, IngestProgress progress) {
+        int ranges = executor == null ? 1 : Math.max(1, Math.min(snapshot.size() / SNAPSHOT_RANGE_MIN_ROWS, SNAPSHOT_RANGES));
+        List<EntryFeed> feeds = new ArrayList<>();
+        for (int range = 0; range < ranges; range++) {
+            int from = (int) ((long) snapshot.size() * range / ranges);
+            int to = (int) ((long) snapshot.size() * (range + 1) / ranges);
+            feeds.add(consumer -> {
+                snapshot.replay(from, to, consumer);
+                progress.entriesParsed(to - from);
+                progress.partDone();
+                return true;
+            });
+        }
+        return computeStats(feeds, executor, progress);
+    }
+
+    // Feeds the entries of folderPath that base has not seen yet, matched by timestamp and track uri,
+    // through a copy of its collectors and folds them in as if they had come after the existing
+    // ones. Collectors then refresh only what the new entries touched. base itself is left as it
+    // was for anyone still reading it. Parsing and merging cost in proportion to the new files, but
+    // copying base's collectors first still costs in proportion to its distinct keys.
+    public static CombinedStatsCollector appendStats(CombinedStatsCollector base, String folderPath, IngestProgress progress,
+                                                     ParsedFileCache fileCache) {
+        CombinedStatsCollector stats = base.copy();
+        PlaybackKeys keys = stats.playbackKeys;
+        StringDictionary strings = stats.store.getStrings();
+        CombinedStatsCollector delta = new CombinedStatsCollector(stats.store);
+        int[] skipped = {0};
+        Consumer<SpotifyPlaybackEntry> newEntries = entry -> {
+            if (keys.add(entry.getEpochMillis(), strings.idOf(entry.getSpotifyTrackUri()))) {
+                delta.processEntry(entry);
+            } else {
+                skipped[0]++;
+            }
+        };
+
+        try (HistorySource source = HistorySource.open(folderPath)) {
+            List<HistorySource.Part> parts = source.parts();
+            progress.partsFound(parts.size());
+            for (HistorySource.Part part : parts) {
+                if (!DataService.processPart(part, newEntries, progress, fileCache)) {
+                    delta.incomplete();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading appended files " + folderPath + ": " + e.getMessage());
+            delta.incomplete();
+        }
+
+        stats.combine(delta);
+        stats.finalizeStats();
+        System.out.println("Skipped " + skipped[0] + " already ingested entries of: " + folderPath);
+        return stats;
+    }
+
+    // One independently readable slice of a session's entries, fed in their original order; false
+    // if some of them could not be read
+    private interface EntryFeed {
+        boolean feed(Consumer<SpotifyPlaybackEntry> consumer);
+    }
+
+    private static CombinedStatsCollector computeStats(List<EntryFeed> feeds, ExecutorService executor, IngestProgress progress) {
+        progress.partsFound(feeds.size());
+
+        EntryStore store = new EntryStore();
+        CombinedStatsCollector stats = new CombinedStatsCollector(store);
+        if (executor == null) {
+            for (EntryFeed feed : feeds) {
+                if (!feed.feed(stats)) stats.incomplete();
+            }
+        } else {
+            // Every part gets its own collectors; partial results are combined in part order
+            // so the outcome is identical to the sequential run above
+            List<CompletableFuture<CombinedStatsCollector>> parts = new ArrayList<>();
+            for (EntryFeed feed : feeds) {
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    CombinedStatsCollector part = new CombinedStatsCollector(store);
+                    if (!feed.feed(part)) part.incomplete();
+                    return part;
+                }, executor));
+            }
+            for (CompletableFuture<CombinedStatsCollector> part : parts) {
+                stats.combine(part.join());
+            }
+        }
+        stats.finalizeStats();
+
+        return stats;
     }
 }
@@ -0,0 +1,99 @@
+package spotify;
+
+import spotify.StatsAggregator.CombinedStatsCollector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Computed stats per session, evicted least-recently-used first once either the session count or
+// the estimated retained heap of all cached sessions goes over budget. Cached stats are published
+// read-only, so lookups take no lock: a read is one map lookup and a use stamp, and only puts
+// serialize with each other. The byte budget also covers whatever else keeps entries on the heap
+// on the sessions' behalf, such as the parsed file cache; only sessions are evicted to stay under it.
+public class StatsCache {
+
+    public record Counters(long hits, long misses, long evictions, int sessions, long estimatedBytes,
+                           int maxSessions, long maxBytes) {}
+
+    private static final class Cached {
+        private final CombinedStatsCollector stats;
+        private final long estimatedBytes;
+        private volatile long lastUsed = System.nanoTime();
+
+        private Cached(CombinedStatsCollector stats, long estimatedBytes) {
+            this.stats = stats;
+            this.estimatedBytes = estimatedBytes;
+        }
+    }
+
+    private final int maxSessions;
+    private final long maxBytes;
+    private final LongSupplier sharedBytes;
+    private final ConcurrentHashMap<String, Cached> entries = new ConcurrentHashMap<>();
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StatsCache(int maxSessions, long maxBytes, LongSupplier sharedBytes) {
+        this.maxSessions = Math.max(1, maxSessions);
+        this.maxBytes = maxBytes;
+        this.sharedBytes = sharedBytes;
+    }
+
+    // Counts a hit when the stats are there. A miss is counted by recordMiss when they are computed
+    // instead, so a session polled while its stats are computed misses once rather than per poll.
+    public CombinedStatsCollector get(String sessionKey) {
+        CombinedStatsCollector stats = peek(sessionKey);
+        if (stats != null) {
+            hits.incrementAndGet();
+        }
+        return stats;
+    }
+
+    // Like get but not counted, for lookups on behalf of a request that already was
+    public CombinedStatsCollector peek(String sessionKey) {
+        Cached cached = entries.get(sessionKey);
+        if (cached == null) {
+            return null;
+        }
+        cached.lastUsed = System.nanoTime();
+        return cached.stats;
+    }
+
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    // Publishes finalized stats; from here on they are never changed
+    public synchronized void put(String sessionKey, CombinedStatsCollector stats) {
+        stats.publish();
+        Cached cached = new Cached(stats, stats.estimatedRetainedBytes());
+        Cached previous = entries.put(sessionKey, cached);
+        if (previous != null) {
+            totalBytes -= previous.estimatedBytes;
+        }
+        totalBytes += cached.estimatedBytes;
+
+        // The newest session always stays, even when it alone is over the byte budget
+        while (entries.size() > 1 && (entries.size() > maxSessions || totalBytes + sharedBytes.getAsLong() > maxBytes)) {
+            Map.Entry<String, Cached> eldest = null;
+            for (Map.Entry<String, Cached> entry : entries.entrySet()) {
+                if (entry.getValue() != cached && (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed)) {
+                    eldest = entry;
+                }
+            }
+            entries.remove(eldest.getKey(), eldest.getValue());
+            totalBytes -= eldest.getValue().estimatedBytes;
+            evictions.incrementAndGet();
+            System.out.println("Evicted cached stats for: " + eldest.getKey());
+        }
+    }
+
+    public synchronized Counters getCounters() {
+        return new Counters(hits.get(), misses.get(), evictions.get(), entries.size(), totalBytes, maxSessions, maxBytes);
+    }
+}
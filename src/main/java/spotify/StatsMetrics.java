@@ -0,0 +1,139 @@
+package spotify;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+// Meters for ingest, stats computation and rendered responses, published through Actuator at
+// /actuator/metrics and /actuator/prometheus. Also the IngestProgress that feeds the per-file ones.
+// Meter names and tags are fixed and bounded; nothing is tagged by session or file name.
+@Component
+public class StatsMetrics implements IngestProgress {
+
+    private final MeterRegistry registry;
+    private final ObservationRegistry observations;
+
+    private final Counter entries;
+    private final Timer fileParse;
+    private final DistributionSummary fileBytes;
+    private final DistributionSummary fileEntries;
+    private final DistributionSummary ingestRate;
+    private final DistributionSummary retainedBytes;
+
+    public StatsMetrics(MeterRegistry registry, ObjectProvider<ObservationRegistry> observations) {
+        this.registry = registry;
+        this.observations = observations.getIfAvailable(() -> ObservationRegistry.NOOP);
+        this.entries = Counter.builder("spotify.ingest.entries")
+                .description("Entries parsed or replayed into stats")
+                .register(registry);
+        this.fileParse = Timer.builder("spotify.ingest.file.parse")
+                .description("Time to parse one history file")
+                .register(registry);
+        this.fileBytes = DistributionSummary.builder("spotify.ingest.file.bytes")
+                .baseUnit("bytes")
+                .register(registry);
+        this.fileEntries = DistributionSummary.builder("spotify.ingest.file.entries")
+                .baseUnit("entries")
+                .register(registry);
+        this.ingestRate = DistributionSummary.builder("spotify.ingest.rate")
+                .description("Entries per second of each stats computation or append")
+                .baseUnit("entries.per.second")
+                .register(registry);
+        this.retainedBytes = DistributionSummary.builder("spotify.stats.session.retained")
+                .description("Estimated heap retained by one session's stats when cached")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void entriesParsed(int count) {
+        entries.increment(count);
+    }
+
+    @Override
+    public void fileParsed(long bytes, int count, long nanos) {
+        fileParse.record(nanos, TimeUnit.NANOSECONDS);
+        if (bytes >= 0) fileBytes.record(bytes);
+        fileEntries.record(count);
+    }
+
+    @Override
+    public void fileFailed(String fileName, String reason) {
+        registry.counter("spotify.ingest.file.failures", "reason", reason).increment();
+    }
+
+    // One background stats job; a tracing bridge on the classpath turns this into a span as well
+    public <T> T observeIngest(Supplier<T> job) {
+        return Observation.createNotStarted("spotify.ingest", observations).observe(job);
+    }
+
+    // How a session's stats were found: hit, snapshot, parsed or appended
+    public void statsLookup(String result) {
+        registry.counter("spotify.stats.lookups", "result", result).increment();
+    }
+
+    public void statsComputed(StatsAggregator.CombinedStatsCollector stats, long entryCount, long nanos) {
+        stats.getLastTimings().forEach((collector, timing) -> {
+            registry.timer("spotify.stats.collector.process", "collector", collector)
+                    .record(timing.processNanos(), TimeUnit.NANOSECONDS);
+            registry.timer("spotify.stats.collector.finalize", "collector", collector)
+                    .record(timing.finalizeNanos(), TimeUnit.NANOSECONDS);
+        });
+        if (nanos > 0) {
+            ingestRate.record(entryCount * 1e9 / nanos);
+        }
+        retainedBytes.record(stats.estimatedRetainedBytes());
+    }
+
+    // Rendering one view: "cached" bodies once per stats version for the response cache, "json" and
+    // "ndjson" bodies on every request, for as long as they take to write out
+    public Timer renderTimer(String view, String format) {
+        return registry.timer("spotify.response.render", "view", view, "format", format);
+    }
+
+    public void bindCaches(StatsCache statsCache, ParsedFileCache fileCache) {
+        bindCache("stats", statsCache, cache -> cache.getCounters().hits(), cache -> cache.getCounters().misses(),
+                cache -> cache.getCounters().evictions(), cache -> cache.getCounters().sessions());
+        Gauge.builder("spotify.cache.bytes", statsCache, cache -> cache.getCounters().estimatedBytes())
+                .tag("cache", "stats")
+                .baseUnit("bytes")
+                .register(registry);
+        bindCache("files", fileCache, cache -> cache.getCounters().hits(), cache -> cache.getCounters().misses(),
+                cache -> cache.getCounters().evictions(), cache -> cache.getCounters().files());
+        Gauge.builder("spotify.cache.entries", fileCache, cache -> cache.getCounters().entries())
+                .tag("cache", "files")
+                .register(registry);
+        Gauge.builder("spotify.cache.bytes", fileCache, cache -> cache.getCounters().estimatedBytes())
+                .tag("cache", "files")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public void bindResponseCache(ResponseCache responseCache) {
+        bindCache("responses", responseCache, cache -> cache.getCounters().hits(), cache -> cache.getCounters().misses(),
+                cache -> cache.getCounters().evictions(), cache -> cache.getCounters().responses());
+        Gauge.builder("spotify.cache.bytes", responseCache, cache -> cache.getCounters().bytes())
+                .tag("cache", "responses")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private <C> void bindCache(String name, C cache, ToDoubleFunction<C> hits, ToDoubleFunction<C> misses,
+                               ToDoubleFunction<C> evictions, ToDoubleFunction<C> size) {
+        FunctionCounter.builder("spotify.cache.hits", cache, hits).tag("cache", name).register(registry);
+        FunctionCounter.builder("spotify.cache.misses", cache, misses).tag("cache", name).register(registry);
+        FunctionCounter.builder("spotify.cache.evictions", cache, evictions).tag("cache", name).register(registry);
+        Gauge.builder("spotify.cache.size", cache, size).tag("cache", name).register(registry);
+    }
+}
@@ -0,0 +1,106 @@
+package spotify;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+// Reads history files straight out of the uploaded archive without extracting anything.
+// Top-level entries are addressed through the central directory, so each one is a part that
+// can be inflated on its own worker; a nested archive is streamed as a single part. An entry large
+// enough to split is inflated once into memory and its ranges parsed from there, unless it is
+// larger than maxInflateBytes, when it is streamed through the parser like a small one.
+public class ZipHistorySource implements HistorySource {
+
+    private static volatile long maxInflateBytes = 64L << 20;
+
+    private final ZipFile zipFile;
+    private final int maxRanges;
+
+    public ZipHistorySource(Path zipPath) throws IOException {
+        this(zipPath, 1);
+    }
+
+    public ZipHistorySource(Path zipPath, int maxRanges) throws IOException {
+        this.zipFile = new ZipFile(zipPath.toFile());
+        this.maxRanges = maxRanges;
+    }
+
+    // Entries above this many bytes are never held on the heap whole. Set once at startup.
+    public static void configure(long maxInflateBytes) {
+        ZipHistorySource.maxInflateBytes = Math.max(0, maxInflateBytes);
+    }
+
+    @Override
+    public List<Part> parts() {
+        List<Part> parts = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || HistorySource.isIgnored(name)) continue;
+
+            if (HistorySource.isHistoryFile(name)) {
+                Part whole = visitor -> {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        visitor.visit(HistorySource.baseName(name), in);
+                    }
+                };
+                // The uncompressed size is -1 when the archive does not record it, which never splits
+                if (entry.getSize() > maxInflateBytes) {
+                    parts.add(whole);
+                    continue;
+                }
+                parts.addAll(SplitHistoryFile.parts(HistorySource.baseName(name), entry.getSize(), maxRanges,
+                        () -> inflate(entry), whole));
+            } else if (HistorySource.isZip(name)) {
+                parts.add(visitor -> {
+                    try (InputStream in = zipFile.getInputStream(entry)) {
+                        readNested(in, visitor);
+                    }
+                });
+            }
+        }
+        return parts;
+    }
+
+    // Read into one array of the recorded size, rather than grown and copied as it fills
+    private ByteBuffer inflate(ZipEntry entry) throws IOException {
+        byte[] content = new byte[(int) entry.getSize()];
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            int read = in.readNBytes(content, 0, content.length);
+            if (read != content.length || in.read() != -1) {
+                throw new IOException("Size of " + entry.getName() + " does not match the archive directory");
+            }
+        }
+        return ByteBuffer.wrap(content);
+    }
+
+    // Streams every history file of an archive, recursing into archives nested inside it.
+    // The caller owns the stream; visitors must not close what they are handed.
+    static void readNested(InputStream in, FileVisitor visitor) throws IOException {
+        ZipInputStream zis = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (entry.isDirectory() || HistorySource.isIgnored(name)) continue;
+
+            if (HistorySource.isHistoryFile(name)) {
+                visitor.visit(HistorySource.baseName(name), zis);
+            } else if (HistorySource.isZip(name)) {
+                readNested(zis, visitor);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
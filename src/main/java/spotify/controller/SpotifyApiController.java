@@ -1,103 +1,484 @@
 package spotify.controller;
 
 import spotify.DataService;
+import spotify.IngestJob;
+import spotify.ResponseCache;
 import spotify.StatsAggregator;
-import spotify.model.*;
+import spotify.StatsMetrics;
+import spotify.model.AlbumStats;
+import spotify.model.RankBy;
+import spotify.model.SpotifyPlaybackEntry;
+import spotify.model.YearlyStats;
+import spotify.util.ContentDigest;
+import spotify.util.SpotifyTimestampCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Timer;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.GZIPOutputStream;
 import java.io.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api")
 public class SpotifyApiController {
 
+    static final String SESSION_KEY = "spotify.sessionKey";
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int NDJSON_FLUSH_LINES = 256;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
     private final DataService dataService;
-    private final StatsAggregator statsAggregator;
+    private final ObjectMapper objectMapper;
+    private final ResponseCache responseCache;
+    private final StatsMetrics metrics;
+    private final boolean extractUploads;
 
     @Autowired
-    public SpotifyApiController(DataService dataService, StatsAggregator statsAggregator) {
+    public SpotifyApiController(DataService dataService, ObjectMapper objectMapper, StatsMetrics metrics,
+                                @Value("${spotify.upload.extract:false}") boolean extractUploads,
+                                @Value("${spotify.response-cache.max-bytes:67108864}") long maxResponseCacheBytes) {
         this.dataService = dataService;
-        this.statsAggregator = statsAggregator;
+        this.objectMapper = objectMapper;
+        this.responseCache = new ResponseCache(objectMapper, metrics, maxResponseCacheBytes);
+        this.metrics = metrics;
+        metrics.bindResponseCache(responseCache);
+        this.extractUploads = extractUploads;
+    }
+
+    // Stats are computed in the background after upload; until they are ready every stats endpoint
+    // answers 503 with the job's progress instead of holding a servlet thread. Once the job has
+    // failed it answers 500 with the job's error until the stats are retried or uploaded again.
+    private ResponseEntity<?> withStats(HttpSession session, Function<StatsAggregator.CombinedStatsCollector, ?> view) {
+        String sessionKey = (String) session.getAttribute(SESSION_KEY);
+        if (sessionKey == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No Spotify data has been uploaded.");
+        }
+
+        StatsAggregator.CombinedStatsCollector stats = dataService.getStatsIfReady(sessionKey);
+        if (stats != null) {
+            Object body = view.apply(stats);
+            return body instanceof ResponseEntity<?> response ? response : ResponseEntity.ok(body);
+        }
+
+        IngestJob job = dataService.startStatsJob(sessionKey, false);
+        if (job.getState() == IngestJob.State.FAILED) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(job.getStatus());
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(job.getStatus());
+    }
+
+    // Whole views are rendered once per stats version and sent as the stored gzip bytes. A request
+    // whose If-None-Match still matches gets 304 before the response cache is even looked at, so it
+    // costs no rendering or copying, evicted or not.
+    private ResponseEntity<?> withRenderedStats(HttpSession session, HttpServletRequest request, String view,
+                                                Function<StatsAggregator.CombinedStatsCollector, ?> body) {
+        String sessionKey = (String) session.getAttribute(SESSION_KEY);
+        return withStats(session, stats -> {
+            boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            String etag = responseCache.etag(sessionKey, view, stats.getVersion(), gzip);
+            if (matchesETag(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .cacheControl(CacheControl.noCache())
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                        .build();
+            }
+
+            ResponseCache.Rendered rendered = responseCache.get(sessionKey, view, stats.getVersion(), () -> body.apply(stats));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                    .contentType(MediaType.APPLICATION_JSON);
+            if (gzip) {
+                return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(rendered.gzipped());
+            }
+            StreamingResponseBody plain = rendered::writeUncompressed;
+            return response.body(plain);
+        });
+    }
+
+    private static boolean wantsNdjson(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.contains(NDJSON.toString());
+    }
+
+    // Views that are not cached are rendered while they are sent, timed like the cached ones. Map
+    // views asked for as NDJSON are written one {"key":..,"value":..} line per entry straight from
+    // the collector's map, so the response never exists in memory as a whole.
+    private ResponseEntity<?> withBody(HttpServletRequest request, String view, ResponseEntity.BodyBuilder response, Object body) {
+        if (!wantsNdjson(request) || !(body instanceof Map<?, ?> map)) {
+            StreamingResponseBody json = out -> objectMapper.writeValue(out, body);
+            return response.contentType(MediaType.APPLICATION_JSON).body(timed(view, "json", json));
+        }
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        StreamingResponseBody lines = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 1 << 13) : out;
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(target)) {
+                generator.setRootValueSeparator(null);
+                int pending = 0;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    generator.writeStartObject();
+                    generator.writeObjectField("key", entry.getKey());
+                    generator.writeObjectField("value", entry.getValue());
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                    if (++pending == NDJSON_FLUSH_LINES) {
+                        generator.flush();
+                        pending = 0;
+                    }
+                }
+            }
+        };
+        return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(NDJSON)
+                .body(timed(view, "ndjson", lines));
     }
 
-    private void ensureStatsAreLoaded() {
-        String folderPath = dataService.getCurrentSessionFolder();
-        dataService.generateStatsIfNeeded(folderPath);
+    private StreamingResponseBody timed(String view, String format, StreamingResponseBody body) {
+        Timer timer = metrics.renderTimer(view, format);
+        return out -> {
+            long start = System.nanoTime();
+            try {
+                body.writeTo(out);
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private ResponseEntity<?> withMapStats(HttpSession session, HttpServletRequest request, String view,
+                                           Function<StatsAggregator.CombinedStatsCollector, ?> body) {
+        if (wantsNdjson(request)) {
+            return withStats(session, stats -> withBody(request, view, ResponseEntity.ok(), body.apply(stats)));
+        }
+        return withRenderedStats(session, request, view, body);
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) return true;
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+            return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+
+    private static boolean isUnranked(String sort, Integer offset, Integer limit) {
+        return sort == null && offset == null && limit == null;
+    }
+
+    private interface RankedView {
+        Object page(RankBy by, int offset, int limit);
+    }
+
+    // Without sort, offset or limit an endpoint sends its whole map as before. With any of them the
+    // entries are ranked (by streams unless sort says otherwise) and only the requested page is sent;
+    // the number of entries across all pages is in X-Total-Count when there is a single map.
+    private Object ranked(HttpServletRequest request, String view, String sort, Integer offset, Integer limit, int total,
+                          RankedView pages) {
+        int from = offset == null ? 0 : offset;
+        int count = limit == null ? Integer.MAX_VALUE : limit;
+        if (from < 0 || count < 0) {
+            return ResponseEntity.badRequest().body("offset and limit must not be negative");
+        }
+        try {
+            Object page = pages.page(sort == null ? RankBy.STREAMS : RankBy.fromParam(sort), from, count);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (total >= 0) {
+                response.header(TOTAL_COUNT_HEADER, String.valueOf(total));
+            }
+            return withBody(request, view, response, page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping("/all-stats")
-    public ResponseEntity<StatsAggregator.CombinedStatsCollector> getStats() {
-        ensureStatsAreLoaded();
-        return ResponseEntity.ok(statsAggregator.getStats());
+    public ResponseEntity<?> getStats(HttpSession session, HttpServletRequest request) {
+        return withRenderedStats(session, request, "all-stats", stats -> stats);
     }
 
     @GetMapping("/top-stats")
-    public ResponseEntity<TopStatsCollector> getTopStats() {
-        ensureStatsAreLoaded();
-        return ResponseEntity.ok(statsAggregator.getStats().getTopStats());
+    public ResponseEntity<?> getTopStats(HttpSession session, HttpServletRequest request,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(required = false) Integer offset,
+                                         @RequestParam(required = false) Integer limit) {
+        if (isUnranked(sort, offset, limit)) {
+            return withRenderedStats(session, request, "top-stats", StatsAggregator.CombinedStatsCollector::getTopStats);
+        }
+        return withStats(session, stats -> ranked(request, "top-stats", sort, offset, limit, -1,
+                stats.getTopStats()::getTopStats));
     }
 
     @GetMapping("/general-stats")
-    public ResponseEntity<GeneralStatsCollector> getGeneralStats() {
-        ensureStatsAreLoaded();
-        return ResponseEntity.ok(statsAggregator.getStats().getGeneralStats());
+    public ResponseEntity<?> getGeneralStats(HttpSession session, HttpServletRequest request) {
+        return withRenderedStats(session, request, "general-stats", StatsAggregator.CombinedStatsCollector::getGeneralStats);
     }
 
     @GetMapping("/top-days")
-    public ResponseEntity<Map<String, DailyStats>> getTopDays() {
-        ensureStatsAreLoaded();
-        return ResponseEntity.ok(statsAggregator.getStats().getDailyStats().getDailyStatsMap());
+    public ResponseEntity<?> getTopDays(HttpSession session, HttpServletRequest request) {
+        return withMapStats(session, request, "top-days", stats -> stats.getDailyStats().getDailyStatsMap());
     }
 
     @GetMapping("/top-years")
-    public ResponseEntity<Map<String, YearlyStats>> getTopYears() {
-        ensureStatsAreLoaded();
-        return ResponseEntity.ok(statsAggregator.getStats().getYearlyStats().getYearlyStatsMap());
+    public ResponseEntity<?> getTopYears(HttpSession session, HttpServletRequest request) {
+        return withMapStats(session, request, "top-years", stats -> stats.getYearlyStats().getYearlyStatsMap());
     }
 
     @GetMapping("/track-stats")
-    public ResponseEntity<Map<String, TrackStats>> getTrackStats() {
-        ensureStatsAreLoaded();
-        return ResponseEntity.ok(statsAggregator.getStats().getTopStats().getTrackStats());
+    public ResponseEntity<?> getTrackStats(HttpSession session, HttpServletRequest request,
+                                           @RequestParam(required = false) String sort,
+                                           @RequestParam(required = false) Integer offset,
+                                           @RequestParam(required = false) Integer limit) {
+        if (isUnranked(sort, offset, limit)) {
+            return withMapStats(session, request, "track-stats", stats -> stats.getTopStats().getTrackStats());
+        }
+        return withStats(session, stats -> ranked(request, "track-stats", sort, offset, limit, stats.getTopStats().getTrackStats().size(),
+                stats.getTopStats()::getTrackStats));
+    }
+
+    @GetMapping("/artist-stats")
+    public ResponseEntity<?> getArtistStats(HttpSession session, HttpServletRequest request,
+                                            @RequestParam(required = false) String sort,
+                                            @RequestParam(required = false) Integer offset,
+                                            @RequestParam(required = false) Integer limit) {
+        if (isUnranked(sort, offset, limit)) {
+            return withMapStats(session, request, "artist-stats", stats -> stats.getTopStats().getArtistStats());
+        }
+        return withStats(session, stats -> ranked(request, "artist-stats", sort, offset, limit, stats.getTopStats().getArtistStats().size(),
+                stats.getTopStats()::getArtistStats));
     }
 
+    @GetMapping("/album-stats")
+    public ResponseEntity<?> getAlbumStats(HttpSession session, HttpServletRequest request,
+                                           @RequestParam(required = false) String sort,
+                                           @RequestParam(required = false) Integer offset,
+                                           @RequestParam(required = false) Integer limit) {
+        if (isUnranked(sort, offset, limit)) {
+            return withMapStats(session, request, "album-stats", stats -> stats.getTopStats().getAlbumStats());
+        }
+        return withStats(session, stats -> ranked(request, "album-stats", sort, offset, limit, stats.getTopStats().getAlbumStats().size(),
+                stats.getTopStats()::getAlbumStats));
+    }
+
+    // from and to are dates (to inclusive) or full timestamps (to exclusive); either may be left
+    // out for an open-ended range
+    @GetMapping("/range-stats")
+    public ResponseEntity<?> getRangeStats(HttpSession session, HttpServletRequest request,
+                                           @RequestParam(required = false) String from,
+                                           @RequestParam(required = false) String to) {
+        long fromMillis = from == null ? Long.MIN_VALUE : rangeBound(from, false);
+        long toMillis = to == null ? Long.MAX_VALUE : rangeBound(to, true);
+        // Long.MIN_VALUE doubles as SpotifyTimestampCodec.NONE, so only bounds actually given are checked
+        if ((from != null && fromMillis == SpotifyTimestampCodec.NONE) || (to != null && toMillis == SpotifyTimestampCodec.NONE)) {
+            return ResponseEntity.badRequest().body("from and to must be dates like 2021-06-01 or timestamps like 2021-06-01T00:00:00Z");
+        }
+        if (fromMillis > toMillis) {
+            return ResponseEntity.badRequest().body("from must not be after to");
+        }
+        return withStats(session, stats -> withBody(request, "range-stats", ResponseEntity.ok(),
+                stats.getRollupStats().range(fromMillis, toMillis)));
+    }
+
+    private static long rangeBound(String value, boolean end) {
+        try {
+            long epochDay = LocalDate.parse(value).toEpochDay();
+            return (end ? epochDay + 1 : epochDay) * SpotifyTimestampCodec.MILLIS_PER_DAY;
+        } catch (DateTimeParseException e) {
+            return SpotifyTimestampCodec.toEpochMillis(value);
+        }
+    }
+
+    // Retained playback histories one page at a time, in the order they were played; entries are
+    // read back from the session's (possibly spilled) store only for the requested page
+    @GetMapping("/year-entries")
+    public ResponseEntity<?> getYearEntries(HttpSession session, HttpServletRequest request,
+                                            @RequestParam String year,
+                                            @RequestParam(required = false) Integer offset,
+                                            @RequestParam(required = false) Integer limit) {
+        return withStats(session, stats -> {
+            YearlyStats yearly = stats.getYearlyStats().getYearlyStatsMap().get(year);
+            return entryPage(request, "year-entries", yearly == null ? null : yearly.entriesOfTheYear.get(year),
+                    "year " + year, offset, limit);
+        });
+    }
+
+    @GetMapping("/album-history")
+    public ResponseEntity<?> getAlbumHistory(HttpSession session, HttpServletRequest request,
+                                             @RequestParam String album,
+                                             @RequestParam(required = false) Integer offset,
+                                             @RequestParam(required = false) Integer limit) {
+        return withStats(session, stats -> {
+            AlbumStats albumStats = stats.getTopStats().getAlbumStats().get(album);
+            return entryPage(request, "album-history", albumStats == null ? null : albumStats.getPlaybackHistory(),
+                    "album " + album, offset, limit);
+        });
+    }
+
+    private ResponseEntity<?> entryPage(HttpServletRequest request, String view, List<SpotifyPlaybackEntry> entries,
+                                        String what, Integer offset, Integer limit) {
+        if (entries == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No entries for " + what);
+        }
+        int from = offset == null ? 0 : offset;
+        int count = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (from < 0 || count < 0) {
+            return ResponseEntity.badRequest().body("offset and limit must not be negative");
+        }
+        int start = Math.min(from, entries.size());
+        int end = (int) Math.min((long) start + count, entries.size());
+        return withBody(request, view, ResponseEntity.ok().header(TOTAL_COUNT_HEADER, String.valueOf(entries.size())),
+                entries.subList(start, end));
+    }
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(Map.of(
+                "sessions", dataService.getCacheCounters(),
+                "parsedFiles", dataService.getFileCacheCounters(),
+                "responses", responseCache.getCounters()
+        ));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<IngestJob.Status> getJobStatus(@PathVariable String jobId) {
+        IngestJob job = dataService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.getStatus());
+    }
+
+    // Computes the session's stats again after a failed job
+    @PostMapping("/stats/retry")
+    public ResponseEntity<?> retryStats(HttpSession session) {
+        String sessionKey = (String) session.getAttribute(SESSION_KEY);
+        if (sessionKey == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No Spotify data has been uploaded.");
+        }
+        IngestJob job = dataService.startStatsJob(sessionKey, true);
+        return ResponseEntity.accepted().body(job.getStatus());
+    }
 
     @PostMapping("/upload")
-    public ResponseEntity<String> handleUpload(@RequestParam("file") MultipartFile zipFile) {
+    public ResponseEntity<?> handleUpload(@RequestParam("file") MultipartFile zipFile, HttpSession session) {
         if (zipFile.isEmpty() || !zipFile.getOriginalFilename().endsWith(".zip")) {
             return ResponseEntity.badRequest().body("Invalid zip file.");
         }
 
         try {
-            Path tempDir = Files.createTempDirectory("spotify");
-            File zipPath = Files.createTempFile(tempDir, "uploaded-", ".zip").toFile();
-            zipFile.transferTo(zipPath);
+            String sessionKey = storeUpload(zipFile);
+            session.setAttribute(SESSION_KEY, sessionKey);
 
-            unzip(zipPath, tempDir.toFile());
+            IngestJob job = dataService.startStatsJob(sessionKey, true);
+            return ResponseEntity.accepted().body(job.getStatus());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(500).body("Failed to process upload.");
+        }
+    }
 
-            dataService.loadSessionFolder(tempDir.toString());
+    // Adds a later export to the current session; plays it shares with what is already there, by
+    // timestamp and track uri, are skipped, and only the new entries are processed
+    @PostMapping("/upload/append")
+    public ResponseEntity<?> handleAppend(@RequestParam("file") MultipartFile zipFile, HttpSession session) {
+        String baseKey = (String) session.getAttribute(SESSION_KEY);
+        if (baseKey == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No Spotify data has been uploaded.");
+        }
+        if (zipFile.isEmpty() || !zipFile.getOriginalFilename().endsWith(".zip")) {
+            return ResponseEntity.badRequest().body("Invalid zip file.");
+        }
 
-            zipPath.delete();
+        try {
+            String uploadKey = storeUpload(zipFile);
+            String sessionKey = dataService.appendSession(baseKey, uploadKey, dataService.getSessionPath(uploadKey));
+            session.setAttribute(SESSION_KEY, sessionKey);
 
-            return ResponseEntity.ok("Upload and processing complete.");
+            IngestJob job = dataService.startStatsJob(sessionKey, true);
+            return ResponseEntity.accepted().body(job.getStatus());
         } catch (IOException e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body("Failed to process upload.");
         }
     }
 
+    // Keeps the upload (or finds an identical earlier one) and registers it under its content key
+    private String storeUpload(MultipartFile zipFile) throws IOException {
+        Path tempDir = Files.createTempDirectory("spotify");
+        File zipPath = Files.createTempFile(tempDir, "uploaded-", ".zip").toFile();
+
+        // The archive is digested while it is received; identical uploads share one session
+        MessageDigest digest = ContentDigest.newDigest();
+        try (InputStream in = new DigestInputStream(zipFile.getInputStream(), digest)) {
+            Files.copy(in, zipPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        String sessionKey = ContentDigest.toKey(digest);
+
+        String existingPath = dataService.getSessionPath(sessionKey);
+        if (existingPath != null && Files.exists(Path.of(existingPath))) {
+            System.out.println("Upload matches existing session: " + sessionKey);
+            zipPath.delete();
+            tempDir.toFile().delete();
+        } else if (extractUploads) {
+            unzip(zipPath, tempDir.toFile());
+            zipPath.delete();
+            dataService.registerUpload(sessionKey, tempDir.toString(), tempDir);
+        } else {
+            // History files are parsed straight out of the archive, nothing is extracted
+            dataService.registerUpload(sessionKey, zipPath.getPath(), tempDir);
+        }
+        return sessionKey;
+    }
+
     private void unzip(File zipFile, File destDir) throws IOException {
         try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
             ZipEntry entry;
@@ -0,0 +1,47 @@
+package spotify.controller;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+
+// Spring only streams a StreamingResponseBody on its own when the handler declares it as the body
+// type; the stats endpoints return ResponseEntity<?>, so this writes such bodies straight to the
+// response instead.
+@Component
+public class StreamingBodyConverter implements HttpMessageConverter<StreamingResponseBody> {
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return StreamingResponseBody.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return List.of(MediaType.ALL);
+    }
+
+    @Override
+    public StreamingResponseBody read(Class<? extends StreamingResponseBody> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Streaming bodies are write-only", inputMessage);
+    }
+
+    @Override
+    public void write(StreamingResponseBody body, MediaType contentType, HttpOutputMessage outputMessage) throws IOException {
+        if (contentType != null) {
+            outputMessage.getHeaders().setContentType(contentType);
+        }
+        body.writeTo(outputMessage.getBody());
+    }
+}
@@ -0,0 +1,42 @@
+package spotify.controller;
+
+import jakarta.servlet.http.HttpSessionAttributeListener;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import org.springframework.stereotype.Component;
+import spotify.DataService;
+
+// Holds the upload behind each browser session's stats for as long as the browser session points
+// at it. Replacing it with a new upload, or the browser session expiring, releases the old one so
+// its files can be deleted.
+@Component
+public class UploadSessionListener implements HttpSessionAttributeListener {
+
+    private final DataService dataService;
+
+    public UploadSessionListener(DataService dataService) {
+        this.dataService = dataService;
+    }
+
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        if (SpotifyApiController.SESSION_KEY.equals(event.getName())) {
+            dataService.holdSession((String) event.getValue());
+        }
+    }
+
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        if (SpotifyApiController.SESSION_KEY.equals(event.getName())) {
+            // The event carries the old value; the new one is held before the old is let go
+            dataService.holdSession((String) event.getSession().getAttribute(event.getName()));
+            dataService.releaseSession((String) event.getValue());
+        }
+    }
+
+    @Override
+    public void attributeRemoved(HttpSessionBindingEvent event) {
+        if (SpotifyApiController.SESSION_KEY.equals(event.getName())) {
+            dataService.releaseSession((String) event.getValue());
+        }
+    }
+}
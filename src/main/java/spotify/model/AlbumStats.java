@@ -1,7 +1,10 @@
 package spotify.model;
 
-import java.util.ArrayList;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import spotify.util.SpotifyTimestampCodec;
+
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -10,37 +13,69 @@ public class AlbumStats {
     Set<String> artist = new HashSet<>();
     int streamCount = 0;
     int skipCount = 0;
-    double hours = 0;
-    String firstPlayedDate = null;
-    List<SpotifyPlaybackEntry> playbackHistory = new ArrayList<>();
+    long rawMsPlayed = 0;
+    // Epoch millis, SpotifyTimestampCodec.NONE until known
+    long firstPlayedDate;
+    long firstStreamedDate = SpotifyTimestampCodec.NONE;
+    EntryList playbackHistory;
 
-    public AlbumStats(String album, Set<String> artist, String playedAt, SpotifyPlaybackEntry entry) {
+    public AlbumStats(String album, Set<String> artist, long playedAt, SpotifyPlaybackEntry entry) {
         this.album = album;
         this.artist = artist;
-        this.hours = 0;
         this.firstPlayedDate = playedAt;
-        this.playbackHistory.add(entry);
+        this.playbackHistory = new EntryList(entry.getStore());
+        this.playbackHistory.addRef(entry.getRef());
+    }
+
+    private AlbumStats(AlbumStats other) {
+        this.album = other.album;
+        this.artist = new LinkedHashSet<>(other.artist);
+        this.streamCount = other.streamCount;
+        this.skipCount = other.skipCount;
+        this.rawMsPlayed = other.rawMsPlayed;
+        this.firstPlayedDate = other.firstPlayedDate;
+        this.firstStreamedDate = other.firstStreamedDate;
+        this.playbackHistory = other.playbackHistory.copy();
+    }
+
+    AlbumStats copy() {
+        return new AlbumStats(this);
     }
 
-    public void addStream(int ms, String playedAt, SpotifyPlaybackEntry entry) {
+    public void addStream(int ms, long playedAt, SpotifyPlaybackEntry entry) {
         streamCount++;
-        if (firstPlayedDate == null || playedAt.compareTo(firstPlayedDate) < 0) {
-            firstPlayedDate = playedAt;
-        }
+        firstPlayedDate = StatsMerging.earlier(firstPlayedDate, playedAt);
+        firstStreamedDate = StatsMerging.earlier(firstStreamedDate, playedAt);
         artist.add(entry.getArtistName());
-        hours += ms / 1000.0 / 60.0 / 60.0;
-            playbackHistory.add(entry);
+        rawMsPlayed += ms;
+        playbackHistory.addRef(entry.getRef());
     }
 
     public void incrementSkip() {
         skipCount++;
     }
+
+    void merge(AlbumStats other) {
+        streamCount += other.streamCount;
+        skipCount += other.skipCount;
+        rawMsPlayed += other.rawMsPlayed;
+        // other's constructor date is a first sighting that sequentially would have come after ours
+        firstPlayedDate = StatsMerging.earlier(firstPlayedDate, other.firstStreamedDate);
+        firstStreamedDate = StatsMerging.earlier(firstStreamedDate, other.firstStreamedDate);
+        artist.addAll(other.artist);
+        // other's first history entry is its constructor entry; a sequential run would only have
+        // recorded it through addStream, which other's history already reflects
+        playbackHistory.addAll(other.playbackHistory, 1);
+    }
+
     public String getAlbum() { return album; }
     public String getArtist() { return String.join(", ", artist); }
     public int getStreamCount() { return streamCount; }
-    public double getHours() { return hours; }
+    public double getHours() { return rawMsPlayed / 1000.0 / 60.0 / 60.0; }
     public int getSkipCount() { return skipCount; }
-    public String getFirstPlayedDate() { return firstPlayedDate; }
+    public String getFirstPlayedDate() { return StatsMerging.format(firstPlayedDate); }
+    // Paged out through /api/album-history rather than with the album stats
+    @JsonIgnore
     public List<SpotifyPlaybackEntry> getPlaybackHistory() { return playbackHistory; }
 }
 
@@ -1,44 +1,86 @@
 package spotify.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import spotify.util.SpotifyTimestampCodec;
+
 import java.util.ArrayList;
 import java.util.List;
 
 public class ArtistStats {
     String artist;
     int streamCount = 0;
-    int uniqueStreamCount = 0;
     int skipCount = 0;
-    String firstPlayedDate = null;
-    List<SpotifyPlaybackEntry> playbackHistory = new ArrayList<>();
-    List<String> uniqueStreamsSeen = new ArrayList<>();
+    // Epoch millis, SpotifyTimestampCodec.NONE until known
+    long firstPlayedDate;
+    long firstStreamedDate = SpotifyTimestampCodec.NONE;
+    EntryList playbackHistory;
+    // Track name ids streamed at least once
+    DistinctCounter uniqueStreamsSeen = DistinctCounters.newCounter();
+    private final StringDictionary names;
 
-    public ArtistStats(String artist, String playedAt, SpotifyPlaybackEntry entry) {
+    public ArtistStats(String artist, long playedAt, SpotifyPlaybackEntry entry) {
         this.artist = artist;
         this.firstPlayedDate = playedAt;
-        this.playbackHistory.add(entry);
+        this.playbackHistory = new EntryList(entry.getStore());
+        this.playbackHistory.addRef(entry.getRef());
+        this.names = entry.getStore().getStrings();
+    }
+
+    private ArtistStats(ArtistStats other) {
+        this.artist = other.artist;
+        this.streamCount = other.streamCount;
+        this.skipCount = other.skipCount;
+        this.firstPlayedDate = other.firstPlayedDate;
+        this.firstStreamedDate = other.firstStreamedDate;
+        this.playbackHistory = other.playbackHistory.copy();
+        this.uniqueStreamsSeen = other.uniqueStreamsSeen.copy();
+        this.names = other.names;
     }
 
-    public void addStream(String playedAt, SpotifyPlaybackEntry entry) {
+    ArtistStats copy() {
+        return new ArtistStats(this);
+    }
+
+    public void addStream(long playedAt, SpotifyPlaybackEntry entry) {
         streamCount++;
-        if (firstPlayedDate == null || playedAt.compareTo(firstPlayedDate) < 0) {
-            firstPlayedDate = playedAt;
-        }
-        if (!uniqueStreamsSeen.contains(entry.getTrackName())) {
-            uniqueStreamsSeen.add(entry.getTrackName());
-            uniqueStreamCount++;
-        }
+        firstPlayedDate = StatsMerging.earlier(firstPlayedDate, playedAt);
+        firstStreamedDate = StatsMerging.earlier(firstStreamedDate, playedAt);
+        uniqueStreamsSeen.add(entry.getTrackNameId());
 //            playbackHistory.add(entry);
     }
 
     public void incrementSkip() {
         skipCount++;
     }
+
+    void merge(ArtistStats other) {
+        streamCount += other.streamCount;
+        skipCount += other.skipCount;
+        // other's constructor date is a first sighting that sequentially would have come after ours
+        firstPlayedDate = StatsMerging.earlier(firstPlayedDate, other.firstStreamedDate);
+        firstStreamedDate = StatsMerging.earlier(firstStreamedDate, other.firstStreamedDate);
+        uniqueStreamsSeen.addAll(other.uniqueStreamsSeen);
+        // playbackHistory only ever holds the entry that created the stats, so other's is dropped
+    }
+
     public String getArtist() { return artist; }
     public int getStreamCount() { return streamCount; }
-    public int getUniqueStreamCount() { return uniqueStreamCount; }
+    public int getUniqueStreamCount() { return (int) uniqueStreamsSeen.count(); }
     public int getSkipCount() { return skipCount; }
-    public String getFirstPlayedDate() { return firstPlayedDate; }
+    public String getFirstPlayedDate() { return StatsMerging.format(firstPlayedDate); }
+    @JsonIgnore
     public List<SpotifyPlaybackEntry> getPlaybackHistory() { return playbackHistory; }
-    public List<String> getUniqueStreamsSeen() { return uniqueStreamsSeen; }
+
+    // Only exact counting remembers which tracks were seen; sketches just estimate how many
+    public List<String> getUniqueStreamsSeen() {
+        if (!(uniqueStreamsSeen instanceof ExactDistinctCounter exact)) {
+            return List.of();
+        }
+        List<String> tracks = new ArrayList<>((int) exact.count());
+        for (int i = 0; i < exact.count(); i++) {
+            tracks.add(names.valueOf((int) exact.idAt(i)));
+        }
+        return tracks;
+    }
 }
 
@@ -1,69 +1,100 @@
 package spotify.model;
 
-import spotify.StatsAggregator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class DailyStats {
 
     public int streams = 0;
-    public double hours = 0;
-    public Map<TrackInfo, Integer> topTracks = new LinkedHashMap<>();
-    public Map<String, Integer> topArtists = new LinkedHashMap<>();
-    public Map<String, Integer> topPodcasts = new LinkedHashMap<>();
+    long rawMsPlayed = 0;
+    // Plays per track (name and artist id pair), artist and podcast id; the public top five maps
+    // are filled from these by finalizeStats
+    final TopCounter trackCounts;
+    final TopCounter artistCounts;
+    final TopCounter podcastCounts;
+    // Replaced whole by finalizeStats, never changed in place
+    public Map<TrackInfo, Integer> topTracks = Map.of();
+    public Map<String, Integer> topArtists = Map.of();
+    public Map<String, Integer> topPodcasts = Map.of();
+    // With approximate counting, the most any listed count may exceed the true one
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer topCountError;
 
-    public DailyStats() {}
+    public DailyStats() {
+        trackCounts = TopCounters.newCounter();
+        artistCounts = TopCounters.newCounter();
+        podcastCounts = TopCounters.newCounter();
+    }
+
+    private DailyStats(DailyStats other) {
+        streams = other.streams;
+        rawMsPlayed = other.rawMsPlayed;
+        trackCounts = other.trackCounts.copy();
+        artistCounts = other.artistCounts.copy();
+        podcastCounts = other.podcastCounts.copy();
+        topTracks = other.topTracks;
+        topArtists = other.topArtists;
+        topPodcasts = other.topPodcasts;
+        topCountError = other.topCountError;
+    }
+
+    DailyStats copy() {
+        return new DailyStats(this);
+    }
 
     void addPlay(SpotifyPlaybackEntry entry) {
         streams++;
-        hours += entry.getMsPlayed() / 1000.0 / 60.0 / 60.0;
-
-        String trackName = entry.getTrackName();
-        String artistName = entry.getArtistName();
-        String podcastName = entry.getPodcastName();
+        rawMsPlayed += entry.getMsPlayed();
 
-        if (trackName != null && artistName != null) {
-            TrackInfo trackInfo = new TrackInfo(trackName, artistName);
-            topTracks.merge(trackInfo, 1, Integer::sum);
+        if (entry.getTrackName() != null && entry.getArtistName() != null) {
+            trackCounts.add(IdIntMap.pair(entry.getTrackNameId(), entry.getArtistId()), 1);
         }
-        if (artistName != null) {
-            topArtists.merge(artistName, 1, Integer::sum);
+        if (entry.getArtistName() != null) {
+            artistCounts.add(entry.getArtistId(), 1);
         }
-        if (podcastName != null) {
-            topPodcasts.merge(podcastName, 1, Integer::sum);
+        if (entry.getPodcastName() != null) {
+            podcastCounts.add(entry.getPodcastId(), 1);
         }
     }
 
-    void finalizeStats() {
-        topTracks = topTracks.entrySet().stream()
-                .sorted(Map.Entry.<TrackInfo, Integer>comparingByValue().reversed())
-                .limit(5)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+    void merge(DailyStats other) {
+        streams += other.streams;
+        rawMsPlayed += other.rawMsPlayed;
+        trackCounts.addAll(other.trackCounts);
+        artistCounts.addAll(other.artistCounts);
+        podcastCounts.addAll(other.podcastCounts);
+    }
+
+    public double getHours() { return rawMsPlayed / 1000.0 / 60.0 / 60.0; }
+
+    void finalizeStats(StringDictionary names) {
+        int error = 0;
+        Map<TrackInfo, Integer> tracks = new LinkedHashMap<>();
+        for (int i : trackCounts.topIndices(5)) {
+            long track = trackCounts.keyAt(i);
+            tracks.put(new TrackInfo(names.valueOf(IdIntMap.first(track)), names.valueOf(IdIntMap.second(track))),
+                    trackCounts.countAt(i));
+            error = Math.max(error, trackCounts.errorAt(i));
+        }
+        Map<String, Integer> artists = new LinkedHashMap<>();
+        error = Math.max(error, top(artistCounts, names, artists));
+        Map<String, Integer> podcasts = new LinkedHashMap<>();
+        error = Math.max(error, top(podcastCounts, names, podcasts));
+        topTracks = Collections.unmodifiableMap(tracks);
+        topArtists = Collections.unmodifiableMap(artists);
+        topPodcasts = Collections.unmodifiableMap(podcasts);
+        topCountError = trackCounts.isExact() ? null : error;
+    }
 
-        topArtists = topArtists.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(5)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
-        topPodcasts = topPodcasts.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(5)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (e1, e2) -> e1,
-                        LinkedHashMap::new
-                ));
+    private static int top(TopCounter counts, StringDictionary names, Map<String, Integer> top) {
+        int error = 0;
+        for (int i : counts.topIndices(5)) {
+            top.put(names.valueOf((int) counts.keyAt(i)), counts.countAt(i));
+            error = Math.max(error, counts.errorAt(i));
+        }
+        return error;
     }
 }
@@ -1,34 +1,110 @@
 package spotify.model;
 
 
-import java.time.ZonedDateTime;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-public class DailyStatsCollector {
+public class DailyStatsCollector implements StatsCollector<DailyStatsCollector> {
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy");
+
+    // Days are bucketed by UTC epoch day; dayIndex maps each day to its position in days
+    private IdIntMap dayIndex = new IdIntMap();
+    private final List<DailyStats> days = new ArrayList<>();
+    // Holds days in the same order as days, the first finalizedDays of them
     private final Map<String, DailyStats> dailyStatsMap = new LinkedHashMap<>();
+    private EntryStore store;
+    // Days before finalizedDays are in dailyStatsMap with current top lists, except changed ones
+    private int finalizedDays = 0;
+    private BitSet changedDays = new BitSet();
 
+    @Override
     public void processEntry(SpotifyPlaybackEntry entry) {
-        int ms = entry.getMsPlayed();
-        if (ms >= 30000) {
-            String timestamp = entry.getTimestamp();
-            ZonedDateTime zdt = ZonedDateTime.parse(timestamp);
-            String date = zdt.format(DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy"));
+        if (store == null) store = entry.getStore();
+        if (entry.isStream() && entry.getEpochDay() != SpotifyPlaybackEntry.NO_DAY) {
+            dayOf(entry.getEpochDay(), null).addPlay(entry);
+        }
+    }
 
-            DailyStats daily = dailyStatsMap.computeIfAbsent(date, k -> new DailyStats());
-            daily.addPlay(entry);
+    @Override
+    public void processBatch(SpotifyPlaybackEntry[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            processEntry(entries[i]);
         }
     }
 
+    private DailyStats dayOf(long epochDay, DailyStats ifAbsent) {
+        int index = dayIndex.putIfAbsent(epochDay, days.size());
+        if (index != IdIntMap.MISSING) return days.get(index);
+        DailyStats daily = ifAbsent != null ? ifAbsent : new DailyStats();
+        days.add(daily);
+        return daily;
+    }
+
+    @Override
+    public void combine(DailyStatsCollector other) {
+        for (int i = 0; i < other.dayIndex.size(); i++) {
+            DailyStats stats = other.days.get(i);
+            DailyStats existing = dayOf(other.dayIndex.keyAt(i), stats);
+            if (existing != stats) {
+                existing.merge(stats);
+                changedDays.set(dayIndex.get(other.dayIndex.keyAt(i)));
+            }
+        }
+        if (store == null) store = other.store;
+    }
+
+    // Each day's label is formatted once here rather than for every entry. After an append only
+    // the new days and those the appended entries changed are refreshed.
+    @Override
     public void finalizeStats() {
-        for (DailyStats stats : dailyStatsMap.values()) {
-            stats.finalizeStats();
+        for (int i = changedDays.nextSetBit(0); i >= 0 && i < finalizedDays; i = changedDays.nextSetBit(i + 1)) {
+            days.get(i).finalizeStats(store.getStrings());
+        }
+        for (int i = finalizedDays; i < dayIndex.size(); i++) {
+            DailyStats stats = days.get(i);
+            stats.finalizeStats(store.getStrings());
+            dailyStatsMap.put(LocalDate.ofEpochDay(dayIndex.keyAt(i)).format(DAY_FORMAT), stats);
         }
+        finalizedDays = dayIndex.size();
+        changedDays.clear();
+    }
+
+    @Override
+    public DailyStatsCollector copy() {
+        DailyStatsCollector copy = new DailyStatsCollector();
+        copy.dayIndex = dayIndex.copy();
+        for (DailyStats stats : days) {
+            copy.days.add(stats.copy());
+        }
+        int day = 0;
+        for (String label : dailyStatsMap.keySet()) {
+            copy.dailyStatsMap.put(label, copy.days.get(day++));
+        }
+        copy.store = store;
+        copy.finalizedDays = finalizedDays;
+        copy.changedDays = (BitSet) changedDays.clone();
+        return copy;
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = dayIndex.estimatedRetainedBytes();
+        for (DailyStats stats : days) {
+            bytes += HeapEstimate.MAP_ENTRY + HeapEstimate.STRING + HeapEstimate.STATS_OBJECT
+                    + stats.trackCounts.estimatedRetainedBytes() + stats.artistCounts.estimatedRetainedBytes()
+                    + stats.podcastCounts.estimatedRetainedBytes()
+                    + (stats.topTracks.size() + stats.topArtists.size() + stats.topPodcasts.size()) * HeapEstimate.MAP_ENTRY;
+        }
+        return bytes;
     }
 
     public Map<String, DailyStats> getDailyStatsMap() {
-        return dailyStatsMap;
+        return Collections.unmodifiableMap(dailyStatsMap);
     }
 }
-
@@ -0,0 +1,16 @@
+package spotify.model;
+
+// Counts distinct dictionary ids. Counters from parallel parts of one computation are merged
+// with addAll; both sides must come from the same DistinctCounters configuration.
+public interface DistinctCounter {
+
+    void add(long id);
+
+    long count();
+
+    void addAll(DistinctCounter other);
+
+    DistinctCounter copy();
+
+    long estimatedRetainedBytes();
+}
@@ -0,0 +1,27 @@
+package spotify.model;
+
+import java.util.function.Supplier;
+
+// Chooses how collectors count distinct tracks: exactly, or with HyperLogLog sketches whose memory
+// per counter is bounded by the precision. Set once at startup, before any stats are computed.
+public final class DistinctCounters {
+
+    public enum Mode { EXACT, APPROXIMATE }
+
+    private static volatile Supplier<DistinctCounter> factory = ExactDistinctCounter::new;
+
+    private DistinctCounters() {}
+
+    public static void configure(Mode mode, int precision) {
+        if (mode == Mode.APPROXIMATE) {
+            HyperLogLogCounter.checkPrecision(precision);
+            factory = () -> new HyperLogLogCounter(precision);
+        } else {
+            factory = ExactDistinctCounter::new;
+        }
+    }
+
+    public static DistinctCounter newCounter() {
+        return factory.get();
+    }
+}
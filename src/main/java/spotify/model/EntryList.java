@@ -0,0 +1,61 @@
+package spotify.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+// A list of entries held as refs into an EntryStore; entries are rebuilt when read, so a retained
+// history costs eight bytes per entry instead of a full object per entry.
+public class EntryList extends AbstractList<SpotifyPlaybackEntry> {
+
+    private final EntryStore store;
+    private long[] refs = new long[4];
+    private int size = 0;
+
+    public EntryList(EntryStore store) {
+        this.store = store;
+    }
+
+    public EntryStore getStore() {
+        return store;
+    }
+
+    public void addRef(long ref) {
+        if (size == refs.length) {
+            refs = Arrays.copyOf(refs, size * 2);
+        }
+        refs[size++] = ref;
+    }
+
+    // Appends other's refs from index from onwards; both lists must share a store
+    public void addAll(EntryList other, int from) {
+        int count = other.size - from;
+        if (count <= 0) return;
+        if (size + count > refs.length) {
+            refs = Arrays.copyOf(refs, Math.max(size + count, size * 2));
+        }
+        System.arraycopy(other.refs, from, refs, size, count);
+        size += count;
+    }
+
+    public EntryList copy() {
+        EntryList copy = new EntryList(store);
+        copy.refs = refs.clone();
+        copy.size = size;
+        return copy;
+    }
+
+    public long refAt(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(index);
+        return refs[index];
+    }
+
+    @Override
+    public SpotifyPlaybackEntry get(int index) {
+        return store.get(refAt(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,386 @@
+package spotify.model;
+
+import spotify.util.SpotifyTimestampCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// A session's playback entries kept column by column instead of as one object per record.
+// Track, artist, album and podcast strings become ids into one dictionary shared by the whole
+// store, reasons get byte codes, platforms and countries short codes, and the four booleans are
+// packed into one flag byte. The few values past what a code can hold get the column's overflow code
+// and are kept per row on the side, as are timestamps that epoch millis cannot represent. Each ingest worker appends through its own Segment, so appends never
+// contend; an entry is addressed afterwards by its ref, the segment index and row packed in a long.
+// Once a session is complete its rows can be spilled to a memory-mapped record file, leaving only
+// the dictionaries on the heap.
+public class EntryStore {
+
+    public static final long NO_REF = -1;
+
+    private static final long NULL_TIMESTAMP = SpotifyTimestampCodec.NONE;
+    // Timestamps whose text would not survive a round trip through epoch millis are kept as text
+    private static final long IRREGULAR_TIMESTAMP = SpotifyTimestampCodec.NONE + 1;
+
+    private static final int SHUFFLE = 1;
+    private static final int SKIPPED = 1 << 1;
+    private static final int OFFLINE = 1 << 2;
+    private static final int INCOGNITO = 1 << 3;
+
+    // Codes 1 up to these are dictionary ids plus one, 0 is null
+    private static final int REASON_OVERFLOW = 0xFF;
+    private static final int PLACE_OVERFLOW = 0xFFFF;
+    // Columns of a segment's overflowed values
+    private static final int REASON_START = 0;
+    private static final int REASON_END = 1;
+    private static final int PLATFORM = 2;
+    private static final int COUNTRY = 3;
+
+    // Timestamp, ms played, flags, two reason codes, two place codes and six string ids; also the
+    // width of one record in a spill file, where the fields follow each other in this order
+    private static final int ROW_BYTES = Long.BYTES + Integer.BYTES + 3 + 2 * Short.BYTES + 6 * Integer.BYTES;
+
+    private final StringDictionary strings = new StringDictionary();
+    private final StringDictionary reasons = new StringDictionary(REASON_OVERFLOW - 1);
+    private final StringDictionary places = new StringDictionary(PLACE_OVERFLOW - 1);
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+
+    public Segment newSegment() {
+        synchronized (segments) {
+            Segment segment = new Segment(segments.size());
+            segments.add(segment);
+            return segment;
+        }
+    }
+
+    public StringDictionary getStrings() {
+        return strings;
+    }
+
+    // A fresh, independent copy of the entry behind ref
+    public SpotifyPlaybackEntry get(long ref) {
+        SpotifyPlaybackEntry entry = new SpotifyPlaybackEntry();
+        segments.get((int) (ref >>> 32)).read((int) ref, entry);
+        return entry;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // Replays every entry, segment by segment in creation order, through one reused instance
+    public void replay(Consumer<SpotifyPlaybackEntry> consumer) {
+        for (Segment segment : segments) {
+            segment.replay(consumer);
+        }
+    }
+
+    // Moves the given segments' rows into one record file and reads them through its mapping from
+    // then on. The file is unlinked right after mapping, so it goes away with the last reader. Only
+    // segments that are done appending may be passed; spilled segments reject further appends.
+    // Other segments are left alone, since sessions appended to the same base share its store.
+    public synchronized long spill(Path dir, Collection<Segment> done) throws IOException {
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "entries-", ".spill");
+        long spilledBytes = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer records = ByteBuffer.allocate(ROW_BYTES * 1024);
+            for (Segment segment : done) {
+                if (segment.spilled != null || segment.size == 0) continue;
+                long offset = channel.position();
+                for (int row = 0; row < segment.size; row++) {
+                    if (records.remaining() < ROW_BYTES) {
+                        writeFully(channel, records);
+                    }
+                    segment.writeRecord(row, records);
+                }
+                writeFully(channel, records);
+                long length = (long) segment.size * ROW_BYTES;
+                segment.spill(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+                spilledBytes += length;
+            }
+        } finally {
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                // Some platforms refuse to delete a mapped file
+                file.toFile().deleteOnExit();
+            }
+        }
+        return spilledBytes;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer records) throws IOException {
+        records.flip();
+        while (records.hasRemaining()) {
+            channel.write(records);
+        }
+        records.clear();
+    }
+
+    public long estimatedRetainedBytes() {
+        return estimatedRetainedBytes(segments);
+    }
+
+    // The rows of just the given segments, plus the dictionaries they share with the rest
+    public long estimatedRetainedBytes(Collection<Segment> counted) {
+        long bytes = 0;
+        for (Segment segment : counted) {
+            if (segment.spilled == null) {
+                bytes += (long) segment.size() * ROW_BYTES;
+            }
+            if (segment.overflowed != null) {
+                bytes += (long) segment.overflowed.size() * (HeapEstimate.MAP_ENTRY + HeapEstimate.STRING);
+            }
+        }
+        bytes += (long) (strings.size() + reasons.size() + places.size())
+                * (HeapEstimate.STRING + HeapEstimate.MAP_ENTRY + HeapEstimate.REFERENCE);
+        return bytes;
+    }
+
+    // Entries appended by one thread; other threads may read them once the appending is done
+    public final class Segment {
+        private final int index;
+        private int size = 0;
+
+        private long[] timestamps = new long[1024];
+        private int[] msPlayed = new int[1024];
+        private byte[] flags = new byte[1024];
+        private byte[] reasonStarts = new byte[1024];
+        private byte[] reasonEnds = new byte[1024];
+        private short[] platforms = new short[1024];
+        private short[] countries = new short[1024];
+        private int[] trackUris = new int[1024];
+        private int[] trackNames = new int[1024];
+        private int[] artists = new int[1024];
+        private int[] albums = new int[1024];
+        private int[] podcasts = new int[1024];
+        private int[] episodes = new int[1024];
+        private Map<Integer, String> irregularTimestamps = null;
+        // Reasons and places past their dictionary's size, by row and column
+        private Map<Long, String> overflowed = null;
+        // Set once the rows live in a spill file; the column arrays are dropped then
+        private volatile ByteBuffer spilled;
+
+        private Segment(int index) {
+            this.index = index;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Stores the entry's values and points it at the stored row: its strings are swapped for the
+        // dictionary's shared instances and its ref and ids are filled in for the collectors to use
+        public long append(SpotifyPlaybackEntry entry) {
+            if (spilled != null) {
+                throw new IllegalStateException("Segment " + index + " has been spilled");
+            }
+            if (size == msPlayed.length) {
+                grow();
+            }
+            int row = size++;
+
+            timestamps[row] = epochOf(entry, row);
+            msPlayed[row] = entry.getMsPlayed();
+            flags[row] = flagsOf(entry);
+            reasonStarts[row] = reasonCode(row, REASON_START, entry.getReasonStart());
+            reasonEnds[row] = reasonCode(row, REASON_END, entry.getReasonEnd());
+            platforms[row] = placeCode(row, PLATFORM, entry.getPlatform());
+            countries[row] = placeCode(row, COUNTRY, entry.getCountry());
+            trackUris[row] = strings.idOf(entry.getSpotifyTrackUri());
+            trackNames[row] = strings.idOf(entry.getTrackName());
+            artists[row] = strings.idOf(entry.getArtistName());
+            albums[row] = strings.idOf(entry.getAlbumName());
+            podcasts[row] = strings.idOf(entry.getPodcastName());
+            episodes[row] = strings.idOf(entry.getPodcastEpisodeName());
+
+            setStrings(row, entry);
+            long ref = ((long) index << 32) | row;
+            entry.stored(EntryStore.this, ref, trackUris[row], trackNames[row], artists[row], albums[row], podcasts[row]);
+            return ref;
+        }
+
+        void read(int row, SpotifyPlaybackEntry entry) {
+            ByteBuffer records = spilled;
+            if (records != null) {
+                int at = row * ROW_BYTES;
+                set(row, entry, records.getLong(at), records.getInt(at + 8), records.get(at + 12),
+                        records.get(at + 13), records.get(at + 14), records.getShort(at + 15), records.getShort(at + 17),
+                        records.getInt(at + 19), records.getInt(at + 23), records.getInt(at + 27),
+                        records.getInt(at + 31), records.getInt(at + 35), records.getInt(at + 39));
+                return;
+            }
+            set(row, entry, timestamps[row], msPlayed[row], flags[row], reasonStarts[row], reasonEnds[row],
+                    platforms[row], countries[row], trackUris[row], trackNames[row], artists[row], albums[row],
+                    podcasts[row], episodes[row]);
+        }
+
+        private void set(int row, SpotifyPlaybackEntry entry, long timestamp, int ms, int bits, byte reasonStart,
+                         byte reasonEnd, short platform, short country, int trackUri, int trackName, int artist,
+                         int album, int podcast, int episode) {
+            if (timestamp == NULL_TIMESTAMP) {
+                entry.setTimestamp(null);
+            } else if (timestamp == IRREGULAR_TIMESTAMP) {
+                entry.setTimestamp(irregularTimestamps.get(row));
+            } else {
+                entry.setEpochMillis(timestamp);
+            }
+            entry.setMsPlayed(ms);
+
+            entry.setShuffle((bits & SHUFFLE) != 0);
+            entry.setSkipped((bits & SKIPPED) != 0);
+            entry.setOffline((bits & OFFLINE) != 0);
+            entry.setIncognitoMode((bits & INCOGNITO) != 0);
+            entry.setIpAddress(null);
+
+            entry.setReasonStart(reason(row, REASON_START, reasonStart));
+            entry.setReasonEnd(reason(row, REASON_END, reasonEnd));
+            entry.setPlatform(place(row, PLATFORM, platform));
+            entry.setCountry(place(row, COUNTRY, country));
+            entry.setSpotifyTrackUri(strings.valueOf(trackUri));
+            entry.setTrackName(strings.valueOf(trackName));
+            entry.setArtistName(strings.valueOf(artist));
+            entry.setAlbumName(strings.valueOf(album));
+            entry.setPodcastName(strings.valueOf(podcast));
+            entry.setPodcastEpisodeName(strings.valueOf(episode));
+            entry.stored(EntryStore.this, ((long) index << 32) | row, trackUri, trackName, artist, album, podcast);
+        }
+
+        private void writeRecord(int row, ByteBuffer records) {
+            records.putLong(timestamps[row]).putInt(msPlayed[row])
+                    .put(flags[row]).put(reasonStarts[row]).put(reasonEnds[row])
+                    .putShort(platforms[row]).putShort(countries[row])
+                    .putInt(trackUris[row]).putInt(trackNames[row]).putInt(artists[row])
+                    .putInt(albums[row]).putInt(podcasts[row]).putInt(episodes[row]);
+        }
+
+        private void spill(ByteBuffer records) {
+            spilled = records;
+            timestamps = null;
+            msPlayed = null;
+            flags = null;
+            reasonStarts = null;
+            reasonEnds = null;
+            platforms = null;
+            countries = null;
+            trackUris = null;
+            trackNames = null;
+            artists = null;
+            albums = null;
+            podcasts = null;
+            episodes = null;
+        }
+
+        public void replay(Consumer<SpotifyPlaybackEntry> consumer) {
+            SpotifyPlaybackEntry entry = new SpotifyPlaybackEntry();
+            for (int row = 0; row < size; row++) {
+                read(row, entry);
+                consumer.accept(entry);
+            }
+        }
+
+        private void setStrings(int row, SpotifyPlaybackEntry entry) {
+            entry.setReasonStart(reason(row, REASON_START, reasonStarts[row]));
+            entry.setReasonEnd(reason(row, REASON_END, reasonEnds[row]));
+            entry.setPlatform(place(row, PLATFORM, platforms[row]));
+            entry.setCountry(place(row, COUNTRY, countries[row]));
+            entry.setSpotifyTrackUri(strings.valueOf(trackUris[row]));
+            entry.setTrackName(strings.valueOf(trackNames[row]));
+            entry.setArtistName(strings.valueOf(artists[row]));
+            entry.setAlbumName(strings.valueOf(albums[row]));
+            entry.setPodcastName(strings.valueOf(podcasts[row]));
+            entry.setPodcastEpisodeName(strings.valueOf(episodes[row]));
+        }
+
+        private byte reasonCode(int row, int column, String reason) {
+            int id = reasons.idOf(reason);
+            if (id == StringDictionary.FULL_ID) {
+                overflow(row, column, reason);
+                return (byte) REASON_OVERFLOW;
+            }
+            return (byte) (id + 1);
+        }
+
+        private short placeCode(int row, int column, String place) {
+            int id = places.idOf(place);
+            if (id == StringDictionary.FULL_ID) {
+                overflow(row, column, place);
+                return (short) PLACE_OVERFLOW;
+            }
+            return (short) (id + 1);
+        }
+
+        private void overflow(int row, int column, String value) {
+            if (overflowed == null) {
+                overflowed = new HashMap<>();
+            }
+            overflowed.put(((long) row << 2) | column, value);
+        }
+
+        private String reason(int row, int column, byte code) {
+            int id = (code & 0xFF) - 1;
+            return id == REASON_OVERFLOW - 1 ? overflowed.get(((long) row << 2) | column) : reasons.valueOf(id);
+        }
+
+        private String place(int row, int column, short code) {
+            int id = (code & 0xFFFF) - 1;
+            return id == PLACE_OVERFLOW - 1 ? overflowed.get(((long) row << 2) | column) : places.valueOf(id);
+        }
+
+        private long epochOf(SpotifyPlaybackEntry entry, int row) {
+            if (entry.isTimestampExact()) {
+                return entry.getEpochMillis();
+            }
+            String timestamp = entry.getTimestamp();
+            if (timestamp == null) {
+                return NULL_TIMESTAMP;
+            }
+            if (irregularTimestamps == null) {
+                irregularTimestamps = new HashMap<>();
+            }
+            irregularTimestamps.put(row, timestamp);
+            return IRREGULAR_TIMESTAMP;
+        }
+
+        private void grow() {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            msPlayed = Arrays.copyOf(msPlayed, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            reasonStarts = Arrays.copyOf(reasonStarts, capacity);
+            reasonEnds = Arrays.copyOf(reasonEnds, capacity);
+            platforms = Arrays.copyOf(platforms, capacity);
+            countries = Arrays.copyOf(countries, capacity);
+            trackUris = Arrays.copyOf(trackUris, capacity);
+            trackNames = Arrays.copyOf(trackNames, capacity);
+            artists = Arrays.copyOf(artists, capacity);
+            albums = Arrays.copyOf(albums, capacity);
+            podcasts = Arrays.copyOf(podcasts, capacity);
+            episodes = Arrays.copyOf(episodes, capacity);
+        }
+    }
+
+    private static byte flagsOf(SpotifyPlaybackEntry entry) {
+        int bits = 0;
+        if (entry.isShuffle()) bits |= SHUFFLE;
+        if (entry.isSkipped()) bits |= SKIPPED;
+        if (entry.isOffline()) bits |= OFFLINE;
+        if (entry.isIncognitoMode()) bits |= INCOGNITO;
+        return (byte) bits;
+    }
+}
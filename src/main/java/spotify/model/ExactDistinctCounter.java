@@ -0,0 +1,49 @@
+package spotify.model;
+
+// Remembers every id, in the order first added, in a primitive hash set
+public class ExactDistinctCounter implements DistinctCounter {
+
+    private final IdIntMap ids;
+
+    public ExactDistinctCounter() {
+        this(new IdIntMap());
+    }
+
+    private ExactDistinctCounter(IdIntMap ids) {
+        this.ids = ids;
+    }
+
+    @Override
+    public void add(long id) {
+        ids.putIfAbsent(id, 0);
+    }
+
+    @Override
+    public long count() {
+        return ids.size();
+    }
+
+    @Override
+    public void addAll(DistinctCounter other) {
+        if (!(other instanceof ExactDistinctCounter exact)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName() + " into an exact counter");
+        }
+        for (int i = 0; i < exact.ids.size(); i++) {
+            add(exact.ids.keyAt(i));
+        }
+    }
+
+    @Override
+    public DistinctCounter copy() {
+        return new ExactDistinctCounter(ids.copy());
+    }
+
+    public long idAt(int index) {
+        return ids.keyAt(index);
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        return ids.estimatedRetainedBytes();
+    }
+}
@@ -0,0 +1,63 @@
+package spotify.model;
+
+// Keeps a count for every key
+public class ExactTopCounter implements TopCounter {
+
+    private final IdIntMap counts;
+
+    public ExactTopCounter() {
+        this(new IdIntMap());
+    }
+
+    private ExactTopCounter(IdIntMap counts) {
+        this.counts = counts;
+    }
+
+    @Override
+    public void add(long key, int count) {
+        counts.add(key, count);
+    }
+
+    @Override
+    public void addAll(TopCounter other) {
+        if (!(other instanceof ExactTopCounter exact)) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName() + " into an exact counter");
+        }
+        counts.addAll(exact.counts);
+    }
+
+    @Override
+    public int[] topIndices(int limit) {
+        return counts.topIndices(limit);
+    }
+
+    @Override
+    public long keyAt(int index) {
+        return counts.keyAt(index);
+    }
+
+    @Override
+    public int countAt(int index) {
+        return counts.valueAt(index);
+    }
+
+    @Override
+    public int errorAt(int index) {
+        return 0;
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    @Override
+    public TopCounter copy() {
+        return new ExactTopCounter(counts.copy());
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        return counts.estimatedRetainedBytes();
+    }
+}
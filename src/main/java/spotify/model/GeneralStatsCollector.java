@@ -3,14 +3,11 @@ package spotify.model;
 import spotify.util.SpotifyArtistRevenueFormatter;
 import spotify.util.SpotifyTimeMapConverter;
 import spotify.util.SpotifyTimeStampFormatter;
+import spotify.util.SpotifyTimestampCodec;
 
-import java.time.Instant;
-import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
-public class GeneralStatsCollector {
+public class GeneralStatsCollector implements StatsCollector<GeneralStatsCollector> {
     private int totalEntries;
     private int totalStreams;
     private int totalUniqueStreams;
@@ -24,10 +21,13 @@ public class GeneralStatsCollector {
     private int rawMusicTime = 0;
     private int rawPodcastTime = 0;
     private int shuffleCount = 0;
-    private Set<String> uniqueTracks = new HashSet<>();
-    private SpotifyPlaybackEntry firstEntry = null;
-    Set<String> trueSkipCategories = new HashSet<>(Arrays.asList("backbtn", "unknown", "endplay", "fwdbtn"));
+    // Track name ids streamed at least once
+    private DistinctCounter uniqueTracks = DistinctCounters.newCounter();
+    private EntryStore store;
+    private long firstEntryRef = EntryStore.NO_REF;
+    private long firstEpochMillis = SpotifyTimestampCodec.NONE;
 
+    @Override
     public void processEntry(SpotifyPlaybackEntry entry) {
         if (entry.getTrackName() != null) {
             totalEntries++;
@@ -35,17 +35,21 @@ public class GeneralStatsCollector {
 
             if (entry.isShuffle()) shuffleCount++;
 
-            if (entry.getMsPlayed() >= 30000) {
+            if (entry.isStream()) {
                 totalStreams++;
-                uniqueTracks.add(entry.getTrackName());
+                uniqueTracks.add(entry.getTrackNameId());
             }
 
-            if (entry.getMsPlayed() <= 5000 && (entry.isSkipped() || trueSkipCategories.contains(entry.getReasonEnd()))) {
+            if (entry.isSkip()) {
                 totalSkippedTracks++;
             }
 
-            if (firstEntry == null || Instant.parse(entry.getTimestamp()).isBefore(Instant.parse(firstEntry.getTimestamp()))) {
-                firstEntry = entry;
+            long epochMillis = entry.getEpochMillis();
+            if (epochMillis != SpotifyTimestampCodec.NONE
+                    && (firstEpochMillis == SpotifyTimestampCodec.NONE || epochMillis < firstEpochMillis)) {
+                store = entry.getStore();
+                firstEntryRef = entry.getRef();
+                firstEpochMillis = epochMillis;
             }
         }
 
@@ -54,13 +58,65 @@ public class GeneralStatsCollector {
         }
     }
 
+    @Override
+    public void processBatch(SpotifyPlaybackEntry[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            processEntry(entries[i]);
+        }
+    }
+
+    @Override
+    public void combine(GeneralStatsCollector other) {
+        totalEntries += other.totalEntries;
+        totalStreams += other.totalStreams;
+        totalSkippedTracks += other.totalSkippedTracks;
+        rawMusicTime += other.rawMusicTime;
+        rawPodcastTime += other.rawPodcastTime;
+        shuffleCount += other.shuffleCount;
+        uniqueTracks.addAll(other.uniqueTracks);
+        if (other.firstEpochMillis != SpotifyTimestampCodec.NONE
+                && (firstEpochMillis == SpotifyTimestampCodec.NONE || other.firstEpochMillis < firstEpochMillis)) {
+            store = other.store;
+            firstEntryRef = other.firstEntryRef;
+            firstEpochMillis = other.firstEpochMillis;
+        }
+    }
+
+    @Override
     public void finalizeStats() {
-        totalUniqueStreams = uniqueTracks.size();
+        totalUniqueStreams = (int) uniqueTracks.count();
         percentageTimeShuffled = totalEntries == 0 ? 0 : (int) Math.round((double) shuffleCount / totalEntries * 100);
         totalArtistRevenue = SpotifyArtistRevenueFormatter.cleanArtistRevenue((float) totalStreams);
         totalMusicTime = SpotifyTimeMapConverter.convertMillisToTimeMap(rawMusicTime);
         totalPodcastTime = SpotifyTimeMapConverter.convertMillisToTimeMap(rawPodcastTime);
-        firstTrackEver = SpotifyTimeStampFormatter.cleanFirstTrackEver(firstEntry);
+        firstTrackEver = SpotifyTimeStampFormatter.cleanFirstTrackEver(firstEpochMillis == SpotifyTimestampCodec.NONE ? null : store.get(firstEntryRef));
+    }
+
+    @Override
+    public GeneralStatsCollector copy() {
+        GeneralStatsCollector copy = new GeneralStatsCollector();
+        copy.totalEntries = totalEntries;
+        copy.totalStreams = totalStreams;
+        copy.totalUniqueStreams = totalUniqueStreams;
+        copy.totalSkippedTracks = totalSkippedTracks;
+        copy.percentageTimeShuffled = percentageTimeShuffled;
+        copy.totalMusicTime = totalMusicTime;
+        copy.totalPodcastTime = totalPodcastTime;
+        copy.totalArtistRevenue = totalArtistRevenue;
+        copy.firstTrackEver = firstTrackEver;
+        copy.rawMusicTime = rawMusicTime;
+        copy.rawPodcastTime = rawPodcastTime;
+        copy.shuffleCount = shuffleCount;
+        copy.uniqueTracks = uniqueTracks.copy();
+        copy.store = store;
+        copy.firstEntryRef = firstEntryRef;
+        copy.firstEpochMillis = firstEpochMillis;
+        return copy;
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        return uniqueTracks.estimatedRetainedBytes();
     }
 
     public int getTotalEntries() { return totalEntries; }
@@ -0,0 +1,13 @@
+package spotify.model;
+
+// Rough per-object heap costs (64-bit JVM, compressed oops) used to budget the stats cache.
+// They only need to be right to within a small factor; nothing depends on them being exact.
+final class HeapEstimate {
+
+    static final long REFERENCE = 4;
+    static final long MAP_ENTRY = 48;
+    static final long STATS_OBJECT = 80;
+    static final long STRING = 56;
+
+    private HeapEstimate() {}
+}
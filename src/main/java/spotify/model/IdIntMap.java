@@ -0,0 +1,180 @@
+package spotify.model;
+
+import java.util.Arrays;
+
+// Open-addressing map from dictionary ids (or pairs of them packed into a long) to int values.
+// Iteration follows insertion order, like the LinkedHashMaps it replaces, without boxing either side.
+final class IdIntMap {
+
+    static final int MISSING = Integer.MIN_VALUE;
+
+    private long[] keys = new long[8];
+    private int[] values = new int[8];
+    private int size = 0;
+    // Slot holds the entry's index + 1, 0 marks an empty slot
+    private int[] slots = new int[16];
+
+    static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    static int second(long pair) {
+        return (int) pair;
+    }
+
+    int size() {
+        return size;
+    }
+
+    IdIntMap copy() {
+        IdIntMap copy = new IdIntMap();
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.slots = slots.clone();
+        return copy;
+    }
+
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    int valueAt(int index) {
+        return values[index];
+    }
+
+    int get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? MISSING : values[index];
+    }
+
+    boolean contains(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    // Returns the value already mapped, or MISSING if value was added
+    int putIfAbsent(long key, int value) {
+        int slot = slotOf(key);
+        if (slots[slot] != 0) return values[slots[slot] - 1];
+        insert(slot, key, value);
+        return MISSING;
+    }
+
+    void add(long key, int delta) {
+        int slot = slotOf(key);
+        if (slots[slot] != 0) {
+            values[slots[slot] - 1] += delta;
+        } else {
+            insert(slot, key, delta);
+        }
+    }
+
+    // Keys new to this map are appended in other's order, as StatsMerging.mergeCounts does
+    void addAll(IdIntMap other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.keys[i], other.values[i]);
+        }
+    }
+
+    // Indices of the largest values, ties broken by insertion order. Selected through a heap of at
+    // most limit indices, so this is O(size log limit) rather than a sort of the whole map.
+    int[] topIndices(int limit) {
+        int count = Math.min(limit, size);
+        if (count <= 0) return new int[0];
+        // Min-heap on "ranks lower": the root is the weakest of the indices kept so far
+        int[] heap = new int[count];
+        int heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (heapSize < count) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+            } else if (ranksBefore(i, heap[0])) {
+                heap[0] = i;
+                siftDown(heap, 0, heapSize);
+            }
+        }
+        int[] top = new int[count];
+        for (int i = count - 1; i >= 0; i--) {
+            top[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, 0, heapSize);
+        }
+        return top;
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        return values[a] > values[b] || (values[a] == values[b] && a < b);
+    }
+
+    private void siftUp(int[] heap, int at) {
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (!ranksBefore(heap[parent], heap[at])) break;
+            int swap = heap[parent]; heap[parent] = heap[at]; heap[at] = swap;
+            at = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int at, int heapSize) {
+        while (true) {
+            int weakest = at;
+            int left = 2 * at + 1;
+            int right = left + 1;
+            if (left < heapSize && ranksBefore(heap[weakest], heap[left])) weakest = left;
+            if (right < heapSize && ranksBefore(heap[weakest], heap[right])) weakest = right;
+            if (weakest == at) return;
+            int swap = heap[weakest]; heap[weakest] = heap[at]; heap[at] = swap;
+            at = weakest;
+        }
+    }
+
+    long estimatedRetainedBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES) + (long) slots.length * Integer.BYTES;
+    }
+
+    private int indexOf(long key) {
+        int slot = slotOf(key);
+        return slots[slot] - 1;
+    }
+
+    private int slotOf(long key) {
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, long key, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,93 @@
+package spotify.model;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// The (timestamp, track uri) pairs of a session's entries, used to recognise plays that an
+// appended export shares with what was already ingested. Nearly every timestamp belongs to a
+// single play, so one track id is kept per timestamp and only the rare others go in a side map.
+// A copy is a layer over the keys it was copied from, which never change again, holding only the
+// pairs added since; a chain of appends is flattened once it gets long so lookups stay short.
+public class PlaybackKeys {
+
+    private static final int MAX_LAYERS = 8;
+
+    private final PlaybackKeys parent;
+    private final int layers;
+    private IdIntMap byTimestamp = new IdIntMap();
+    private final Map<Long, Set<Integer>> sharedTimestamps = new HashMap<>();
+
+    public PlaybackKeys() {
+        this(null);
+    }
+
+    private PlaybackKeys(PlaybackKeys parent) {
+        this.parent = parent;
+        this.layers = parent == null ? 1 : parent.layers + 1;
+    }
+
+    // From here on this instance must not be added to; the copy takes the additions
+    public PlaybackKeys copy() {
+        if (layers < MAX_LAYERS) {
+            return new PlaybackKeys(this);
+        }
+        PlaybackKeys flat = new PlaybackKeys();
+        flat.addAll(this);
+        return flat;
+    }
+
+    // True if the pair was new; entries without a track uri are keyed by timestamp alone
+    public boolean add(long epochMillis, int trackUriId) {
+        if (parent != null && parent.contains(epochMillis, trackUriId)) return false;
+        int existing = byTimestamp.putIfAbsent(epochMillis, trackUriId);
+        if (existing == IdIntMap.MISSING) return true;
+        if (existing == trackUriId) return false;
+        return sharedTimestamps.computeIfAbsent(epochMillis, t -> new HashSet<>()).add(trackUriId);
+    }
+
+    public boolean contains(long epochMillis, int trackUriId) {
+        int existing = byTimestamp.get(epochMillis);
+        if (existing == trackUriId) return true;
+        if (existing != IdIntMap.MISSING) {
+            Set<Integer> others = sharedTimestamps.get(epochMillis);
+            if (others != null && others.contains(trackUriId)) return true;
+        }
+        return parent != null && parent.contains(epochMillis, trackUriId);
+    }
+
+    // Every pair of other, including those of the layers under it
+    public void addAll(PlaybackKeys other) {
+        if (other.parent != null) {
+            addAll(other.parent);
+        }
+        for (int i = 0; i < other.byTimestamp.size(); i++) {
+            add(other.byTimestamp.keyAt(i), other.byTimestamp.valueAt(i));
+        }
+        other.sharedTimestamps.forEach((timestamp, tracks) -> {
+            for (int track : tracks) {
+                add(timestamp, track);
+            }
+        });
+    }
+
+    public boolean isEmpty() {
+        return parent == null && byTimestamp.size() == 0;
+    }
+
+    public int size() {
+        int size = byTimestamp.size();
+        for (Set<Integer> others : sharedTimestamps.values()) {
+            size += others.size();
+        }
+        return parent == null ? size : size + parent.size();
+    }
+
+    // Layers shared with other sessions are counted by each of them, since any one may outlive the rest
+    public long estimatedRetainedBytes() {
+        long bytes = byTimestamp.estimatedRetainedBytes()
+                + (long) sharedTimestamps.size() * (HeapEstimate.MAP_ENTRY + HeapEstimate.STATS_OBJECT);
+        return parent == null ? bytes : bytes + parent.estimatedRetainedBytes();
+    }
+}
@@ -0,0 +1,18 @@
+package spotify.model;
+
+import java.util.Locale;
+
+// Orders in which the top stats maps can be ranked; firstPlayed puts the earliest first, the others
+// the largest first
+public enum RankBy {
+    STREAMS, SKIPS, TIME, FIRST_PLAYED, UNIQUE_STREAMS;
+
+    // Accepts the query parameter form, e.g. "first-played"
+    public static RankBy fromParam(String param) {
+        try {
+            return valueOf(param.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sort: " + param);
+        }
+    }
+}
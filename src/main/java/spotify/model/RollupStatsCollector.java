@@ -0,0 +1,409 @@
+package spotify.model;
+
+import spotify.util.SpotifyTimestampCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Time-bucketed totals at hour, day, week (Monday to Sunday), month and year granularity, built
+// while ingesting so that any date range can be answered without going back to the entries.
+// Totals for a range come from prefix sums over the hour buckets. Top tracks and artists come
+// from the day and coarser buckets that cover the range, each of which keeps its own top list.
+public class RollupStatsCollector implements StatsCollector<RollupStatsCollector> {
+
+    public enum Granularity { HOUR, DAY, WEEK, MONTH, YEAR }
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    // Each bucket keeps more than a range answers with, so merged top lists rarely miss an entry
+    private static final int BUCKET_TOP = 25;
+    private static final int RANGE_TOP = 10;
+
+    private final Level[] levels = new Level[Granularity.values().length];
+    private EntryStore store;
+
+    // Hour keys in ascending order with running totals; entry i + 1 sums hours 0..i
+    private long[] hours = new long[0];
+    private long[] playsBefore = new long[1];
+    private long[] streamsBefore = new long[1];
+    private long[] skipsBefore = new long[1];
+    private long[] shufflesBefore = new long[1];
+    private long[] msBefore = new long[1];
+
+    public RollupStatsCollector() {
+        for (Granularity granularity : Granularity.values()) {
+            levels[granularity.ordinal()] = new Level(granularity != Granularity.HOUR);
+        }
+    }
+
+    @Override
+    public void processEntry(SpotifyPlaybackEntry entry) {
+        if (store == null) store = entry.getStore();
+        long epochDay = entry.getEpochDay();
+        if (epochDay == SpotifyPlaybackEntry.NO_DAY) return;
+
+        level(Granularity.HOUR).bucket(Math.floorDiv(entry.getEpochMillis(), MILLIS_PER_HOUR), null).add(entry);
+        level(Granularity.DAY).bucket(epochDay, null).add(entry);
+        level(Granularity.WEEK).bucket(weekOf(epochDay), null).add(entry);
+        level(Granularity.MONTH).bucket(SpotifyTimestampCodec.epochMonth(epochDay), null).add(entry);
+        level(Granularity.YEAR).bucket(entry.getYear(), null).add(entry);
+    }
+
+    @Override
+    public void processBatch(SpotifyPlaybackEntry[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            processEntry(entries[i]);
+        }
+    }
+
+    @Override
+    public void combine(RollupStatsCollector other) {
+        for (int i = 0; i < levels.length; i++) {
+            levels[i].merge(other.levels[i]);
+        }
+        if (store == null) store = other.store;
+    }
+
+    @Override
+    public void finalizeStats() {
+        for (Level level : levels) {
+            for (Bucket bucket : level.buckets) {
+                bucket.finalizeTop();
+            }
+        }
+
+        Level hourly = level(Granularity.HOUR);
+        if (hourly.buckets.isEmpty()) return;
+        Integer[] order = new Integer[hourly.buckets.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(hourly.index.keyAt(a), hourly.index.keyAt(b)));
+
+        // New hours are merged into the running totals of the hours finalized before, if any
+        long[] oldHours = hours;
+        long[] oldPlays = playsBefore, oldStreams = streamsBefore, oldSkips = skipsBefore;
+        long[] oldShuffles = shufflesBefore, oldMs = msBefore;
+        int size = 0;
+        long[] merged = new long[oldHours.length + order.length];
+        for (int i = 0, j = 0; i < oldHours.length || j < order.length; size++) {
+            long next = j == order.length || (i < oldHours.length && oldHours[i] <= hourly.index.keyAt(order[j]))
+                    ? oldHours[i] : hourly.index.keyAt(order[j]);
+            if (i < oldHours.length && oldHours[i] == next) i++;
+            if (j < order.length && hourly.index.keyAt(order[j]) == next) j++;
+            merged[size] = next;
+        }
+
+        hours = Arrays.copyOf(merged, size);
+        playsBefore = new long[size + 1];
+        streamsBefore = new long[size + 1];
+        skipsBefore = new long[size + 1];
+        shufflesBefore = new long[size + 1];
+        msBefore = new long[size + 1];
+        for (int k = 0, i = 0, j = 0; k < size; k++) {
+            long plays = 0, streams = 0, skips = 0, shuffles = 0, ms = 0;
+            if (i < oldHours.length && oldHours[i] == hours[k]) {
+                plays = oldPlays[i + 1] - oldPlays[i];
+                streams = oldStreams[i + 1] - oldStreams[i];
+                skips = oldSkips[i + 1] - oldSkips[i];
+                shuffles = oldShuffles[i + 1] - oldShuffles[i];
+                ms = oldMs[i + 1] - oldMs[i];
+                i++;
+            }
+            if (j < order.length && hourly.index.keyAt(order[j]) == hours[k]) {
+                Bucket bucket = hourly.buckets.get(order[j]);
+                plays += bucket.plays;
+                streams += bucket.streams;
+                skips += bucket.skips;
+                shuffles += bucket.shuffles;
+                ms += bucket.rawMsPlayed;
+                j++;
+            }
+            playsBefore[k + 1] = playsBefore[k] + plays;
+            streamsBefore[k + 1] = streamsBefore[k] + streams;
+            skipsBefore[k + 1] = skipsBefore[k] + skips;
+            shufflesBefore[k + 1] = shufflesBefore[k] + shuffles;
+            msBefore[k + 1] = msBefore[k] + ms;
+        }
+        // The prefix sums hold everything the hour buckets did
+        levels[Granularity.HOUR.ordinal()] = new Level(false);
+    }
+
+    // The prefix sums and finalized top lists are only ever replaced, so the copy shares them
+    @Override
+    public RollupStatsCollector copy() {
+        RollupStatsCollector copy = new RollupStatsCollector();
+        for (int i = 0; i < levels.length; i++) {
+            copy.levels[i] = new Level(levels[i]);
+        }
+        copy.store = store;
+        copy.hours = hours;
+        copy.playsBefore = playsBefore;
+        copy.streamsBefore = streamsBefore;
+        copy.skipsBefore = skipsBefore;
+        copy.shufflesBefore = shufflesBefore;
+        copy.msBefore = msBefore;
+        return copy;
+    }
+
+    // Stats for [fromMillis, toMillis). Totals are exact at hour resolution: an hour counts if it
+    // starts before toMillis and ends after fromMillis. Top lists cover the whole days in the range.
+    public RangeStats range(long fromMillis, long toMillis) {
+        if (hours.length > 0) {
+            // Clamped to the days with data, so open-ended ranges cannot overflow below
+            long firstDay = SpotifyTimestampCodec.epochDay(hours[0] * MILLIS_PER_HOUR);
+            long lastDay = SpotifyTimestampCodec.epochDay(hours[hours.length - 1] * MILLIS_PER_HOUR);
+            fromMillis = Math.max(fromMillis, firstDay * SpotifyTimestampCodec.MILLIS_PER_DAY);
+            toMillis = Math.min(toMillis, (lastDay + 1) * SpotifyTimestampCodec.MILLIS_PER_DAY);
+        }
+        int first = lowerBound(hours, Math.floorDiv(fromMillis, MILLIS_PER_HOUR));
+        int last = lowerBound(hours, ceilDiv(toMillis, MILLIS_PER_HOUR));
+        if (last < first) last = first;
+
+        TopCounter trackCounts = new ExactTopCounter();
+        TopCounter artistCounts = new ExactTopCounter();
+        int merged = 0;
+        if (hours.length > 0) {
+            long day = ceilDiv(fromMillis, SpotifyTimestampCodec.MILLIS_PER_DAY);
+            long endDay = Math.floorDiv(toMillis, SpotifyTimestampCodec.MILLIS_PER_DAY);
+            // Greedily take the largest bucket that starts at day and still ends inside the range
+            while (day < endDay) {
+                long month = SpotifyTimestampCodec.epochMonth(day);
+                long nextMonth = SpotifyTimestampCodec.epochDayOfMonth(month + 1);
+                long year = Math.floorDiv(month, 12);
+                long nextYear = SpotifyTimestampCodec.epochDayOfMonth((year + 1) * 12);
+                long next;
+                Bucket bucket;
+                if (SpotifyTimestampCodec.epochDayOfMonth(year * 12) == day && nextYear <= endDay) {
+                    bucket = level(Granularity.YEAR).get(year);
+                    next = nextYear;
+                } else if (SpotifyTimestampCodec.epochDayOfMonth(month) == day && nextMonth <= endDay) {
+                    bucket = level(Granularity.MONTH).get(month);
+                    next = nextMonth;
+                } else if (weekStart(weekOf(day)) == day && day + 7 <= endDay) {
+                    bucket = level(Granularity.WEEK).get(weekOf(day));
+                    next = day + 7;
+                } else {
+                    bucket = level(Granularity.DAY).get(day);
+                    next = day + 1;
+                }
+                if (bucket != null) {
+                    bucket.addTopTo(trackCounts, artistCounts);
+                    merged++;
+                }
+                day = next;
+            }
+        }
+
+        Map<TrackInfo, Integer> topTracks = new LinkedHashMap<>();
+        for (int i : trackCounts.topIndices(RANGE_TOP)) {
+            long track = trackCounts.keyAt(i);
+            topTracks.put(new TrackInfo(store.getStrings().valueOf(IdIntMap.first(track)),
+                    store.getStrings().valueOf(IdIntMap.second(track))), trackCounts.countAt(i));
+        }
+        Map<String, Integer> topArtists = new LinkedHashMap<>();
+        for (int i : artistCounts.topIndices(RANGE_TOP)) {
+            topArtists.put(store.getStrings().valueOf((int) artistCounts.keyAt(i)), artistCounts.countAt(i));
+        }
+
+        return new RangeStats(
+                playsBefore[last] - playsBefore[first],
+                streamsBefore[last] - streamsBefore[first],
+                skipsBefore[last] - skipsBefore[first],
+                shufflesBefore[last] - shufflesBefore[first],
+                (msBefore[last] - msBefore[first]) / 1000.0 / 60.0 / 60.0,
+                topTracks, topArtists, merged, merged > 1 || !TopCounters.isExact());
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = (long) hours.length * 6 * Long.BYTES;
+        for (Level level : levels) {
+            bytes += level.index.estimatedRetainedBytes();
+            for (Bucket bucket : level.buckets) {
+                bytes += HeapEstimate.STATS_OBJECT
+                        + (long) (bucket.topTracks.length + bucket.topArtists.length) * (Long.BYTES + Integer.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    private Level level(Granularity granularity) {
+        return levels[granularity.ordinal()];
+    }
+
+    private static long weekOf(long epochDay) {
+        // 1970-01-01 was a Thursday, so shifting by three days starts weeks on Mondays
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    private static long weekStart(long week) {
+        return week * 7 - 3;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    private static int lowerBound(long[] sorted, long key) {
+        int index = Arrays.binarySearch(sorted, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public record RangeStats(long plays, long streams, long skips, long shuffles, double hours,
+                             Map<TrackInfo, Integer> topTracks, Map<String, Integer> topArtists,
+                             int bucketsMerged, boolean topApproximate) {}
+
+    private static final class Level {
+        private final IdIntMap index;
+        private final List<Bucket> buckets = new ArrayList<>();
+        private final boolean ranked;
+        // Entries mostly arrive in time order, so consecutive ones usually share a bucket
+        private long lastKey;
+        private Bucket last;
+
+        private Level(boolean ranked) {
+            this.index = new IdIntMap();
+            this.ranked = ranked;
+        }
+
+        private Level(Level other) {
+            this.index = other.index.copy();
+            for (Bucket bucket : other.buckets) {
+                buckets.add(new Bucket(bucket));
+            }
+            this.ranked = other.ranked;
+        }
+
+        private Bucket bucket(long key, Bucket ifAbsent) {
+            if (last != null && lastKey == key && ifAbsent == null) return last;
+            int position = index.putIfAbsent(key, buckets.size());
+            Bucket bucket;
+            if (position != IdIntMap.MISSING) {
+                bucket = buckets.get(position);
+            } else {
+                bucket = ifAbsent != null ? ifAbsent : new Bucket(ranked);
+                buckets.add(bucket);
+            }
+            lastKey = key;
+            last = bucket;
+            return bucket;
+        }
+
+        private Bucket get(long key) {
+            int position = index.get(key);
+            return position == IdIntMap.MISSING ? null : buckets.get(position);
+        }
+
+        private void merge(Level other) {
+            for (int i = 0; i < other.buckets.size(); i++) {
+                Bucket bucket = other.buckets.get(i);
+                Bucket existing = bucket(other.index.keyAt(i), bucket);
+                if (existing != bucket) existing.merge(bucket);
+            }
+        }
+    }
+
+    // Plays are all entries; streams, and the counts behind the top lists, are plays of 30s or more.
+    // Skips are skipped tracks as general stats count them, by SpotifyPlaybackEntry.isSkip()
+    private static final class Bucket {
+        private final boolean ranked;
+        private int plays;
+        private int streams;
+        private int skips;
+        private int shuffles;
+        private long rawMsPlayed;
+        // Counts since the last finalize, folded into the top BUCKET_TOP of each by the next
+        private TopCounter trackCounts;
+        private TopCounter artistCounts;
+        private long[] topTracks = new long[0];
+        private int[] topTrackCounts = new int[0];
+        private long[] topArtists = new long[0];
+        private int[] topArtistCounts = new int[0];
+
+        private Bucket(boolean ranked) {
+            this.ranked = ranked;
+            if (ranked) {
+                trackCounts = TopCounters.newCounter();
+                artistCounts = TopCounters.newCounter();
+            }
+        }
+
+        private Bucket(Bucket other) {
+            this.ranked = other.ranked;
+            this.plays = other.plays;
+            this.streams = other.streams;
+            this.skips = other.skips;
+            this.shuffles = other.shuffles;
+            this.rawMsPlayed = other.rawMsPlayed;
+            this.trackCounts = other.trackCounts == null ? null : other.trackCounts.copy();
+            this.artistCounts = other.artistCounts == null ? null : other.artistCounts.copy();
+            this.topTracks = other.topTracks;
+            this.topTrackCounts = other.topTrackCounts;
+            this.topArtists = other.topArtists;
+            this.topArtistCounts = other.topArtistCounts;
+        }
+
+        private void add(SpotifyPlaybackEntry entry) {
+            plays++;
+            rawMsPlayed += entry.getMsPlayed();
+            if (entry.getTrackName() != null && entry.isSkip()) skips++;
+            if (entry.isShuffle()) shuffles++;
+            if (!entry.isStream()) return;
+
+            streams++;
+            if (trackCounts == null) return;
+            if (entry.getTrackName() != null && entry.getArtistName() != null) {
+                trackCounts.add(IdIntMap.pair(entry.getTrackNameId(), entry.getArtistId()), 1);
+            }
+            if (entry.getArtistName() != null) {
+                artistCounts.add(entry.getArtistId(), 1);
+            }
+        }
+
+        private void merge(Bucket other) {
+            plays += other.plays;
+            streams += other.streams;
+            skips += other.skips;
+            shuffles += other.shuffles;
+            rawMsPlayed += other.rawMsPlayed;
+            if (!ranked) return;
+            if (trackCounts == null) {
+                // Merging into a finalized bucket: its top lists stand in for the counts they came from
+                trackCounts = TopCounters.newCounter();
+                artistCounts = TopCounters.newCounter();
+                addTopTo(trackCounts, artistCounts);
+            }
+            if (other.trackCounts != null) {
+                trackCounts.addAll(other.trackCounts);
+                artistCounts.addAll(other.artistCounts);
+            }
+            other.addTopTo(trackCounts, artistCounts);
+        }
+
+        private void finalizeTop() {
+            if (trackCounts == null) return;
+            int[] top = trackCounts.topIndices(BUCKET_TOP);
+            topTracks = new long[top.length];
+            topTrackCounts = new int[top.length];
+            for (int i = 0; i < top.length; i++) {
+                topTracks[i] = trackCounts.keyAt(top[i]);
+                topTrackCounts[i] = trackCounts.countAt(top[i]);
+            }
+            top = artistCounts.topIndices(BUCKET_TOP);
+            topArtists = new long[top.length];
+            topArtistCounts = new int[top.length];
+            for (int i = 0; i < top.length; i++) {
+                topArtists[i] = artistCounts.keyAt(top[i]);
+                topArtistCounts[i] = artistCounts.countAt(top[i]);
+            }
+            trackCounts = null;
+            artistCounts = null;
+        }
+
+        private void addTopTo(TopCounter tracks, TopCounter artists) {
+            for (int i = 0; i < topTracks.length; i++) tracks.add(topTracks[i], topTrackCounts[i]);
+            for (int i = 0; i < topArtists.length; i++) artists.add(topArtists[i], topArtistCounts[i]);
+        }
+    }
+}
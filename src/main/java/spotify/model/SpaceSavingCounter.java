@@ -0,0 +1,280 @@
+package spotify.model;
+
+import java.util.Arrays;
+
+// Space-Saving heavy-hitter summary (Metwally, Agrawal and El Abbadi): at most capacity keys are
+// counted. A new key arriving when all slots are taken replaces the key with the smallest count
+// and inherits that count as its possible overcount. Any key counted more than total / capacity
+// times is guaranteed to be kept, and no count is ever too low. Until capacity keys have been seen
+// every count is exact, and the slots grow with the keys, so a day with a handful of plays does not
+// pay for a full summary.
+public class SpaceSavingCounter implements TopCounter {
+
+    public static final int MIN_CAPACITY = 8;
+    public static final int MAX_CAPACITY = 1 << 16;
+
+    private final int capacity;
+    private int size = 0;
+    private long[] keys;
+    private int[] counts;
+    private int[] errors;
+    // Order in which each slot's key was first counted, for ties
+    private long[] since;
+    private long sequence = 0;
+    // Open-addressing index from key to slot + 1, 0 marks an empty bucket
+    private int[] buckets;
+    // Min-heap of slots by count; heap[0] is the slot the next new key replaces
+    private int[] heap;
+    private int[] heapPosition;
+
+    public SpaceSavingCounter(int capacity) {
+        this.capacity = checkCapacity(capacity);
+        allocate(MIN_CAPACITY);
+    }
+
+    private SpaceSavingCounter(SpaceSavingCounter other) {
+        this.capacity = other.capacity;
+        this.size = other.size;
+        this.keys = other.keys.clone();
+        this.counts = other.counts.clone();
+        this.errors = other.errors.clone();
+        this.since = other.since.clone();
+        this.sequence = other.sequence;
+        this.buckets = other.buckets.clone();
+        this.heap = other.heap.clone();
+        this.heapPosition = other.heapPosition.clone();
+    }
+
+    static int checkCapacity(int capacity) {
+        if (capacity < MIN_CAPACITY || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Space-Saving capacity must be between " + MIN_CAPACITY + " and " + MAX_CAPACITY);
+        }
+        return capacity;
+    }
+
+    @Override
+    public void add(long key, int count) {
+        int slot = find(key);
+        if (slot >= 0) {
+            counts[slot] += count;
+            siftDown(heapPosition[slot]);
+            return;
+        }
+        if (size < capacity) {
+            if (size == keys.length) {
+                grow(Math.min(capacity, size * 2));
+            }
+            slot = size++;
+            put(slot, key, count, 0);
+            heap[slot] = slot;
+            heapPosition[slot] = slot;
+            siftUp(slot);
+            return;
+        }
+        slot = heap[0];
+        int smallest = counts[slot];
+        remove(keys[slot]);
+        put(slot, key, smallest + count, smallest);
+        siftDown(0);
+    }
+
+    // Mergeable summaries: a key missing from a full summary may have been counted there up to
+    // that summary's smallest count, so that much is added to both its count and its error.
+    @Override
+    public void addAll(TopCounter other) {
+        if (!(other instanceof SpaceSavingCounter summary) || summary.capacity != capacity) {
+            throw new IllegalArgumentException("Cannot merge " + other.getClass().getSimpleName() + " into a capacity " + capacity + " summary");
+        }
+        int ownFloor = size == capacity ? counts[heap[0]] : 0;
+        int otherFloor = summary.size == summary.capacity ? summary.counts[summary.heap[0]] : 0;
+
+        int total = 0;
+        long[] mergedKeys = new long[size + summary.size];
+        int[] mergedCounts = new int[mergedKeys.length];
+        int[] mergedErrors = new int[mergedKeys.length];
+        for (int slot : orderCounted()) {
+            int there = summary.find(keys[slot]);
+            mergedKeys[total] = keys[slot];
+            mergedCounts[total] = counts[slot] + (there >= 0 ? summary.counts[there] : otherFloor);
+            mergedErrors[total++] = errors[slot] + (there >= 0 ? summary.errors[there] : otherFloor);
+        }
+        for (int slot : summary.orderCounted()) {
+            if (find(summary.keys[slot]) >= 0) continue;
+            mergedKeys[total] = summary.keys[slot];
+            mergedCounts[total] = ownFloor + summary.counts[slot];
+            mergedErrors[total++] = ownFloor + summary.errors[slot];
+        }
+
+        // Keep the capacity largest, still in the order they were first counted
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(mergedCounts[b], mergedCounts[a]));
+        boolean[] kept = new boolean[total];
+        int keeping = Math.min(capacity, total);
+        for (int i = 0; i < keeping; i++) kept[order[i]] = true;
+
+        if (keeping > keys.length) {
+            allocate(Math.min(capacity, Integer.highestOneBit(keeping - 1) << 1));
+        } else {
+            Arrays.fill(buckets, 0);
+        }
+        size = 0;
+        for (int i = 0; i < total; i++) {
+            if (!kept[i]) continue;
+            int slot = size++;
+            put(slot, mergedKeys[i], mergedCounts[i], mergedErrors[i]);
+            heap[slot] = slot;
+            heapPosition[slot] = slot;
+            siftUp(slot);
+        }
+    }
+
+    @Override
+    public int[] topIndices(int limit) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> counts[a] != counts[b] ? Integer.compare(counts[b], counts[a]) : Long.compare(since[a], since[b]));
+        int[] top = new int[Math.min(limit, size)];
+        for (int i = 0; i < top.length; i++) top[i] = order[i];
+        return top;
+    }
+
+    @Override
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    @Override
+    public int countAt(int index) {
+        return counts[index];
+    }
+
+    @Override
+    public int errorAt(int index) {
+        return errors[index];
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    @Override
+    public TopCounter copy() {
+        return new SpaceSavingCounter(this);
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        return (long) keys.length * (2 * Long.BYTES + 4 * Integer.BYTES) + (long) buckets.length * Integer.BYTES;
+    }
+
+    // Empty slots for up to length keys; whatever was counted is dropped
+    private void allocate(int length) {
+        keys = new long[length];
+        counts = new int[length];
+        errors = new int[length];
+        since = new long[length];
+        heap = new int[length];
+        heapPosition = new int[length];
+        buckets = new int[Integer.highestOneBit(length * 2 - 1) << 1];
+    }
+
+    // Room for length keys, keeping the slots, their heap order and when each was first counted
+    private void grow(int length) {
+        keys = Arrays.copyOf(keys, length);
+        counts = Arrays.copyOf(counts, length);
+        errors = Arrays.copyOf(errors, length);
+        since = Arrays.copyOf(since, length);
+        heap = Arrays.copyOf(heap, length);
+        heapPosition = Arrays.copyOf(heapPosition, length);
+        buckets = new int[Integer.highestOneBit(length * 2 - 1) << 1];
+        for (int slot = 0; slot < size; slot++) {
+            index(slot);
+        }
+    }
+
+    private int[] orderCounted() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(since[a], since[b]));
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++) slots[i] = order[i];
+        return slots;
+    }
+
+    private void put(int slot, long key, int count, int error) {
+        keys[slot] = key;
+        counts[slot] = count;
+        errors[slot] = error;
+        since[slot] = sequence++;
+        index(slot);
+    }
+
+    private void index(int slot) {
+        int mask = buckets.length - 1;
+        int bucket = hash(keys[slot]) & mask;
+        while (buckets[bucket] != 0) bucket = (bucket + 1) & mask;
+        buckets[bucket] = slot + 1;
+    }
+
+    private int find(long key) {
+        int mask = buckets.length - 1;
+        for (int bucket = hash(key) & mask; buckets[bucket] != 0; bucket = (bucket + 1) & mask) {
+            if (keys[buckets[bucket] - 1] == key) return buckets[bucket] - 1;
+        }
+        return -1;
+    }
+
+    // Linear probing with backward shift, so lookups never need tombstones
+    private void remove(long key) {
+        int mask = buckets.length - 1;
+        int bucket = hash(key) & mask;
+        while (keys[buckets[bucket] - 1] != key) bucket = (bucket + 1) & mask;
+        int hole = bucket;
+        for (int next = (hole + 1) & mask; buckets[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keys[buckets[next] - 1]) & mask;
+            // Move the entry back unless its home lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                buckets[hole] = buckets[next];
+                hole = next;
+            }
+        }
+        buckets[hole] = 0;
+    }
+
+    private void siftUp(int at) {
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[heap[at]]) break;
+            swap(parent, at);
+            at = parent;
+        }
+    }
+
+    private void siftDown(int at) {
+        while (true) {
+            int smallest = at;
+            int left = 2 * at + 1;
+            int right = left + 1;
+            if (left < size && counts[heap[left]] < counts[heap[smallest]]) smallest = left;
+            if (right < size && counts[heap[right]] < counts[heap[smallest]]) smallest = right;
+            if (smallest == at) return;
+            swap(smallest, at);
+            at = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int slot = heap[a];
+        heap[a] = heap[b];
+        heap[b] = slot;
+        heapPosition[heap[a]] = a;
+        heapPosition[heap[b]] = b;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -1,7 +1,21 @@
 package spotify.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import spotify.util.SpotifyTimestampCodec;
+
+import java.util.Set;
+
 public class SpotifyPlaybackEntry {
+    private static final long UNPARSED = SpotifyTimestampCodec.NONE + 1;
+    // getEpochDay() of an entry without a usable timestamp
+    public static final long NO_DAY = Long.MIN_VALUE;
+    // A short play that ended for one of these counts as skipped even without the skipped flag
+    private static final Set<String> SKIP_REASONS = Set.of("backbtn", "unknown", "endplay", "fwdbtn");
+    private static final int CLASSIFIED = 1, STREAM = 2, SKIP = 4, PODCAST_PLAY = 8;
+
     private String timestamp;
+    // Decoded from timestamp on first use, or set directly with the text derived on first use
+    private long epochMillis = UNPARSED;
     private String platform;
     private int msPlayed;
     private String country;
@@ -19,16 +33,59 @@ public class SpotifyPlaybackEntry {
     private String podcastName;
     private String podcastEpisodeName;
 
+    // Filled in by EntryStore.Segment.append: where the entry is stored and the ids of its strings
+    private EntryStore store;
+    private long ref = EntryStore.NO_REF;
+    private int trackUriId = StringDictionary.NULL_ID;
+    private int trackNameId = StringDictionary.NULL_ID;
+    private int artistId = StringDictionary.NULL_ID;
+    private int albumId = StringDictionary.NULL_ID;
+    private int podcastId = StringDictionary.NULL_ID;
+
+    // What the collectors ask of every entry, derived once on first use after its inputs last changed
+    private int classes;
+    private long epochDay;
+    private int year;
+
     // Getters and Setters
 
-    public String getTimestamp() { return timestamp; }
-    public void setTimestamp(String timestamp) { this.timestamp = timestamp; }
+    public String getTimestamp() {
+        if (timestamp == null && epochMillis != UNPARSED && epochMillis != SpotifyTimestampCodec.NONE) {
+            timestamp = SpotifyTimestampCodec.toString(epochMillis);
+        }
+        return timestamp;
+    }
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+        this.epochMillis = UNPARSED;
+        this.classes = 0;
+    }
+
+    // SpotifyTimestampCodec.NONE when the entry has no usable timestamp
+    @JsonIgnore
+    public long getEpochMillis() {
+        if (epochMillis == UNPARSED) {
+            epochMillis = SpotifyTimestampCodec.toEpochMillis(timestamp);
+        }
+        return epochMillis;
+    }
+    public void setEpochMillis(long epochMillis) {
+        this.timestamp = null;
+        this.epochMillis = epochMillis;
+        this.classes = 0;
+    }
+
+    // True if getTimestamp() can be rebuilt exactly from getEpochMillis()
+    @JsonIgnore
+    public boolean isTimestampExact() {
+        return getEpochMillis() != SpotifyTimestampCodec.NONE && (timestamp == null || SpotifyTimestampCodec.isCanonical(timestamp));
+    }
 
     public String getPlatform() { return platform; }
     public void setPlatform(String platform) { this.platform = platform; }
 
     public int getMsPlayed() { return msPlayed; }
-    public void setMsPlayed(int msPlayed) { this.msPlayed = msPlayed; }
+    public void setMsPlayed(int msPlayed) { this.msPlayed = msPlayed; this.classes = 0; }
 
     public String getCountry() { return country; }
     public void setCountry(String country) { this.country = country; }
@@ -52,13 +109,13 @@ public class SpotifyPlaybackEntry {
     public void setReasonStart(String reasonStart) { this.reasonStart = reasonStart; }
 
     public String getReasonEnd() { return reasonEnd; }
-    public void setReasonEnd(String reasonEnd) { this.reasonEnd = reasonEnd; }
+    public void setReasonEnd(String reasonEnd) { this.reasonEnd = reasonEnd; this.classes = 0; }
 
     public boolean isShuffle() { return shuffle; }
     public void setShuffle(boolean shuffle) { this.shuffle = shuffle; }
 
     public boolean isSkipped() { return skipped; }
-    public void setSkipped(boolean skipped) { this.skipped = skipped; }
+    public void setSkipped(boolean skipped) { this.skipped = skipped; this.classes = 0; }
 
     public boolean isOffline() { return offline; }
     public void setOffline(boolean offline) { this.offline = offline; }
@@ -67,9 +124,118 @@ public class SpotifyPlaybackEntry {
     public void setIncognitoMode(boolean incognitoMode) { this.incognitoMode = incognitoMode; }
 
     public String getPodcastName() { return podcastName; }
-    public void setPodcastName(String podcastName) { this.podcastName = podcastName; }
+    public void setPodcastName(String podcastName) { this.podcastName = podcastName; this.classes = 0; }
 
     public String getPodcastEpisodeName() { return podcastEpisodeName; }
     public void setPodcastEpisodeName(String podcastEpisodeName) { this.podcastEpisodeName = podcastEpisodeName; }
 
+    @JsonIgnore public EntryStore getStore() { return store; }
+    @JsonIgnore public long getRef() { return ref; }
+    @JsonIgnore public int getTrackUriId() { return trackUriId; }
+    @JsonIgnore public int getTrackNameId() { return trackNameId; }
+    @JsonIgnore public int getArtistId() { return artistId; }
+    @JsonIgnore public int getAlbumId() { return albumId; }
+    @JsonIgnore public int getPodcastId() { return podcastId; }
+
+    // Played for 30s or more
+    @JsonIgnore
+    public boolean isStream() { return (classes() & STREAM) != 0; }
+
+    // Played for 5s or less and then skipped, whether flagged so or by how it ended
+    @JsonIgnore
+    public boolean isSkip() { return (classes() & SKIP) != 0; }
+
+    // A podcast episode played for more than 5s
+    @JsonIgnore
+    public boolean isPodcastPlay() { return (classes() & PODCAST_PLAY) != 0; }
+
+    // UTC epoch day of the timestamp, NO_DAY without one
+    @JsonIgnore
+    public long getEpochDay() {
+        classes();
+        return epochDay;
+    }
+
+    // UTC year of the timestamp, 0 without one
+    @JsonIgnore
+    public int getYear() {
+        classes();
+        return year;
+    }
+
+    private int classes() {
+        if (classes == 0) {
+            int bits = CLASSIFIED;
+            if (msPlayed >= 30000) bits |= STREAM;
+            if (msPlayed <= 5000 && (skipped || (reasonEnd != null && SKIP_REASONS.contains(reasonEnd)))) bits |= SKIP;
+            if (podcastName != null && msPlayed > 5000) bits |= PODCAST_PLAY;
+            long millis = getEpochMillis();
+            epochDay = millis == SpotifyTimestampCodec.NONE ? NO_DAY : SpotifyTimestampCodec.epochDay(millis);
+            year = epochDay == NO_DAY ? 0 : SpotifyTimestampCodec.yearOfEpochDay(epochDay);
+            classes = bits;
+        }
+        return classes;
+    }
+
+    void stored(EntryStore store, long ref, int trackUriId, int trackNameId, int artistId, int albumId, int podcastId) {
+        this.store = store;
+        this.ref = ref;
+        this.trackUriId = trackUriId;
+        this.trackNameId = trackNameId;
+        this.artistId = artistId;
+        this.albumId = albumId;
+        this.podcastId = podcastId;
+    }
+
+    // Takes over every field of other as it is, its store ids and classification included, so a
+    // copy of a stored entry needs nothing looked up or derived again
+    public void copyFrom(SpotifyPlaybackEntry other) {
+        timestamp = other.timestamp;
+        epochMillis = other.epochMillis;
+        platform = other.platform;
+        msPlayed = other.msPlayed;
+        country = other.country;
+        ipAddress = other.ipAddress;
+        trackName = other.trackName;
+        artistName = other.artistName;
+        albumName = other.albumName;
+        spotifyTrackUri = other.spotifyTrackUri;
+        reasonStart = other.reasonStart;
+        reasonEnd = other.reasonEnd;
+        shuffle = other.shuffle;
+        skipped = other.skipped;
+        offline = other.offline;
+        incognitoMode = other.incognitoMode;
+        podcastName = other.podcastName;
+        podcastEpisodeName = other.podcastEpisodeName;
+        classes = other.classes;
+        epochDay = other.epochDay;
+        year = other.year;
+        stored(other.store, other.ref, other.trackUriId, other.trackNameId, other.artistId, other.albumId, other.podcastId);
+    }
+
+    // Resets every field so the instance can be reused for the next parsed record
+    public void clear() {
+        timestamp = null;
+        epochMillis = UNPARSED;
+        platform = null;
+        msPlayed = 0;
+        country = null;
+        ipAddress = null;
+        trackName = null;
+        artistName = null;
+        albumName = null;
+        spotifyTrackUri = null;
+        reasonStart = null;
+        reasonEnd = null;
+        shuffle = false;
+        skipped = false;
+        offline = false;
+        incognitoMode = false;
+        podcastName = null;
+        podcastEpisodeName = null;
+        classes = 0;
+        stored(null, EntryStore.NO_REF, StringDictionary.NULL_ID, StringDictionary.NULL_ID,
+                StringDictionary.NULL_ID, StringDictionary.NULL_ID, StringDictionary.NULL_ID);
+    }
 }
@@ -0,0 +1,46 @@
+package spotify.model;
+
+import java.util.function.Consumer;
+
+// Mirrors java.util.stream.Collector for a mutable result container: processEntry accumulates,
+// combine folds in a collector fed with later entries, finalizeStats derives the final values.
+// A fresh instance must come from the registered supplier for every independent partition.
+// Entries arrive already stored in the session's EntryStore and the instance is reused for the
+// next entry, so keep entry.getRef() (or copy the values needed) rather than the entry itself.
+// Facts shared by several collectors, such as isStream() or getEpochDay(), are derived once per
+// entry by the entry itself.
+// Once finalized stats are handed to readers they are never changed again: an append extends a
+// copy, and readers may share the original from any number of threads.
+public interface StatsCollector<C extends StatsCollector<C>> extends Consumer<SpotifyPlaybackEntry> {
+
+    void processEntry(SpotifyPlaybackEntry entry);
+
+    // Ingest hands collectors their entries a batch at a time; the instances are reused once the
+    // call returns. Overriding this with the same loop gives each collector a call site of its own
+    // that the JIT can inline processEntry into, which the shared default cannot.
+    default void processBatch(SpotifyPlaybackEntry[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            processEntry(entries[i]);
+        }
+    }
+
+    void combine(C other);
+
+    default void finalizeStats() {}
+
+    // An independent deep copy of a finalized collector, for an append to extend. Collectors that
+    // return null are rebuilt instead, by feeding a fresh instance every entry seen so far.
+    default C copy() {
+        return null;
+    }
+
+    // Approximate heap retained by this collector's results, used to budget the stats cache
+    default long estimatedRetainedBytes() {
+        return 0;
+    }
+
+    @Override
+    default void accept(SpotifyPlaybackEntry entry) {
+        processEntry(entry);
+    }
+}
@@ -0,0 +1,28 @@
+package spotify.model;
+
+import spotify.util.SpotifyTimestampCodec;
+
+import java.util.Map;
+
+final class StatsMerging {
+
+    private StatsMerging() {}
+
+    static long earlier(long current, long candidate) {
+        if (current == SpotifyTimestampCodec.NONE) return candidate;
+        if (candidate == SpotifyTimestampCodec.NONE) return current;
+        return Math.min(current, candidate);
+    }
+
+    static String format(long epochMillis) {
+        return epochMillis == SpotifyTimestampCodec.NONE ? null : SpotifyTimestampCodec.toString(epochMillis);
+    }
+
+    // Keys new to the target are appended in the source's order, which keeps LinkedHashMap
+    // iteration identical to feeding both halves through one collector in sequence.
+    static <K> void mergeCounts(Map<K, Integer> target, Map<K, Integer> source) {
+        for (Map.Entry<K, Integer> e : source.entrySet()) {
+            target.merge(e.getKey(), e.getValue(), Integer::sum);
+        }
+    }
+}
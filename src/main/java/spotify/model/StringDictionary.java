@@ -0,0 +1,59 @@
+package spotify.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Assigns dense int ids to distinct strings. Lookups of known strings are lock-free, so ingest
+// workers of one session can share a dictionary and produce ids that need no remapping on combine.
+// A dictionary with a maximum size hands out FULL_ID for new strings once it is reached; the caller
+// keeps those values some other way.
+public class StringDictionary {
+
+    public static final int NULL_ID = -1;
+    public static final int FULL_ID = -2;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[256];
+    private int size = 0;
+    private final int maxSize;
+
+    public StringDictionary() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public StringDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int idOf(String value) {
+        if (value == null) return NULL_ID;
+        Integer id = ids.get(value);
+        return id != null ? id : add(value);
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) return existing;
+        if (size == maxSize) {
+            return FULL_ID;
+        }
+
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[size] = value;
+        // Publish the array before the id so a reader that sees the id also sees the value
+        values = current;
+        ids.put(value, size);
+        return size++;
+    }
+
+    public String valueOf(int id) {
+        return id == NULL_ID ? null : values[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,29 @@
+package spotify.model;
+
+// Counts plays per dictionary id (or packed id pair) to rank the most played ones. Counters from
+// parallel parts of one computation are merged with addAll; both sides must come from the same
+// TopCounters configuration.
+public interface TopCounter {
+
+    void add(long key, int count);
+
+    void addAll(TopCounter other);
+
+    // Indices of the largest counts, highest first, ties in the order keys were first counted
+    int[] topIndices(int limit);
+
+    long keyAt(int index);
+
+    int countAt(int index);
+
+    // How much countAt(index) may exceed the true count; always 0 for exact counters
+    int errorAt(int index);
+
+    boolean isExact();
+
+    // An independent counter with the same counts, for stats that are extended while the original
+    // is still being read
+    TopCounter copy();
+
+    long estimatedRetainedBytes();
+}
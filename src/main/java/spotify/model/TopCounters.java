@@ -0,0 +1,33 @@
+package spotify.model;
+
+import java.util.function.Supplier;
+
+// Chooses how collectors count plays for their top lists: exactly, or with Space-Saving summaries
+// of a fixed capacity per day or period. Set once at startup, before any stats are computed.
+public final class TopCounters {
+
+    public enum Mode { EXACT, APPROXIMATE }
+
+    private static volatile Supplier<TopCounter> factory = ExactTopCounter::new;
+    private static volatile boolean exact = true;
+
+    private TopCounters() {}
+
+    public static void configure(Mode mode, int capacity) {
+        if (mode == Mode.APPROXIMATE) {
+            SpaceSavingCounter.checkCapacity(capacity);
+            factory = () -> new SpaceSavingCounter(capacity);
+        } else {
+            factory = ExactTopCounter::new;
+        }
+        exact = mode == Mode.EXACT;
+    }
+
+    public static boolean isExact() {
+        return exact;
+    }
+
+    public static TopCounter newCounter() {
+        return factory.get();
+    }
+}
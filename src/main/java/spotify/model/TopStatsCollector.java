@@ -1,67 +1,242 @@
 package spotify.model;
 
 
+import spotify.util.SpotifyTimestampCodec;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
-public class TopStatsCollector {
+public class TopStatsCollector implements StatsCollector<TopStatsCollector> {
     Map<String, TrackStats> trackStatsMap = new LinkedHashMap<>();
     Map<String, ArtistStats> artistStatsMap = new LinkedHashMap<>();
     Map<String, AlbumStats> albumStatsMap = new LinkedHashMap<>();
-    Map<String, Integer> podcastStatsMap = new LinkedHashMap<>();
+    IdIntMap podcastCounts = new IdIntMap();
+    private EntryStore store;
+    // Each map's entries sorted per RankBy, built on the first ranked request and reused for every
+    // page; counted in estimatedRetainedBytes before they are built
+    private final Map<String, List<? extends Map.Entry<String, ?>>> rankings = new ConcurrentHashMap<>();
 
 
+    @Override
     public void processEntry(SpotifyPlaybackEntry entry) {
+        if (store == null) store = entry.getStore();
         String track = entry.getTrackName();
         String artist = entry.getArtistName();
+        if (track == null && artist == null) {
+            if (entry.isPodcastPlay()) {
+                podcastCounts.add(entry.getPodcastId(), 1);
+            }
+            return;
+        }
+
         String album = entry.getAlbumName();
-        String playedAt = entry.getTimestamp();
-        int ms = entry.getMsPlayed();
-        String podcast = entry.getPodcastName();
         String trackUri = entry.getSpotifyTrackUri();
-        Set<String> trueSkipCategories = new HashSet<>(Arrays.asList("backbtn", "unknown", "endplay", "fwdbtn"));
+        long playedAt = entry.getEpochMillis();
+        boolean stream = entry.isStream();
+        boolean skip = entry.isSkip();
 
+        // TrackStats
+        TrackStats trackStats = trackStatsMap.get(trackUri);
+        if (trackStats == null) {
+            trackStats = new TrackStats(track, artist, album, playedAt, entry);
+            trackStatsMap.put(trackUri, trackStats);
+        }
+        if (stream) trackStats.addStream(playedAt, entry);
+        if (skip) trackStats.incrementSkip();
 
-        if (track != null || artist != null) {
+        // ArtistStats
+        ArtistStats artistStats = artistStatsMap.get(artist);
+        if (artistStats == null) {
+            artistStats = new ArtistStats(artist, playedAt, entry);
+            artistStatsMap.put(artist, artistStats);
+        }
+        if (stream) artistStats.addStream(playedAt, entry);
+        if (skip) artistStats.incrementSkip();
 
-            // TrackStats
-            trackStatsMap.putIfAbsent(trackUri, new TrackStats(track, artist, album, playedAt, entry));
-            TrackStats trackStats = trackStatsMap.get(trackUri);
-            if (ms >= 30000) {
-                trackStats.addStream(playedAt, entry);
-            }
-            if (entry.getMsPlayed() <= 5000 && (entry.isSkipped() || trueSkipCategories.contains(entry.getReasonEnd()))) {
-                trackStats.incrementSkip();
-            }
+        // AlbumStats
+        AlbumStats albumStats = albumStatsMap.get(album);
+        if (albumStats == null) {
+            albumStats = new AlbumStats(album, new LinkedHashSet<>(), playedAt, entry);
+            albumStatsMap.put(album, albumStats);
+        }
+        if (stream) albumStats.addStream(entry.getMsPlayed(), playedAt, entry);
+        if (skip) albumStats.incrementSkip();
+    }
 
-            // ArtistStats
-            artistStatsMap.putIfAbsent(artist, new ArtistStats(artist, playedAt, entry));
-            ArtistStats artistStats = artistStatsMap.get(artist);
-            if (ms >= 30000) {
-                artistStats.addStream(playedAt, entry);
-            }
-            if (entry.getMsPlayed() <= 5000 && (entry.isSkipped() || trueSkipCategories.contains(entry.getReasonEnd()))) {
-                artistStats.incrementSkip();
-            }
+    @Override
+    public void processBatch(SpotifyPlaybackEntry[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            processEntry(entries[i]);
+        }
+    }
 
-            // AlbumStats
-            Set<String> artistSet = new HashSet<>();
-            albumStatsMap.putIfAbsent(album, new AlbumStats(album, artistSet, playedAt, entry));
-            AlbumStats albumStats = albumStatsMap.get(album);
-            if (ms >= 30000) {
-                albumStats.addStream(ms, playedAt, entry);
-            }
-            if (entry.getMsPlayed() <= 5000 && (entry.isSkipped() || trueSkipCategories.contains(entry.getReasonEnd()))) {
-                albumStats.incrementSkip();
-            }
+    @Override
+    public void combine(TopStatsCollector other) {
+        other.trackStatsMap.forEach((uri, stats) -> {
+            TrackStats existing = trackStatsMap.putIfAbsent(uri, stats);
+            if (existing != null) existing.merge(stats);
+        });
+        other.artistStatsMap.forEach((artist, stats) -> {
+            ArtistStats existing = artistStatsMap.putIfAbsent(artist, stats);
+            if (existing != null) existing.merge(stats);
+        });
+        other.albumStatsMap.forEach((album, stats) -> {
+            AlbumStats existing = albumStatsMap.putIfAbsent(album, stats);
+            if (existing != null) existing.merge(stats);
+        });
+        podcastCounts.addAll(other.podcastCounts);
+        if (store == null) store = other.store;
+        rankings.clear();
+    }
+
+    @Override
+    public void finalizeStats() {
+        rankings.clear();
+    }
+
+    @Override
+    public TopStatsCollector copy() {
+        TopStatsCollector copy = new TopStatsCollector();
+        trackStatsMap.forEach((uri, stats) -> copy.trackStatsMap.put(uri, stats.copy()));
+        artistStatsMap.forEach((artist, stats) -> copy.artistStatsMap.put(artist, stats.copy()));
+        albumStatsMap.forEach((album, stats) -> copy.albumStatsMap.put(album, stats.copy()));
+        copy.podcastCounts = podcastCounts.copy();
+        copy.store = store;
+        return copy;
+    }
 
-        } else if (podcast != null && ms > 5000) {
-            podcastStatsMap.put(podcast, podcastStatsMap.containsKey(podcast) ? podcastStatsMap.get(podcast) + 1 : 1);
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = (trackStatsMap.size() + artistStatsMap.size() + albumStatsMap.size())
+                * (HeapEstimate.MAP_ENTRY + HeapEstimate.STATS_OBJECT);
+        for (ArtistStats stats : artistStatsMap.values()) {
+            bytes += stats.uniqueStreamsSeen.estimatedRetainedBytes() + Long.BYTES;
         }
+        for (AlbumStats stats : albumStatsMap.values()) {
+            bytes += stats.playbackHistory.size() * Long.BYTES;
+        }
+        return bytes + podcastCounts.estimatedRetainedBytes() + rankingsRetainedBytes();
     }
 
-    public Map<String, TrackStats> getTrackStats() { return trackStatsMap; }
-    public Map<String, ArtistStats> getArtistStats() { return artistStatsMap; }
-    public Map<String, AlbumStats> getAlbumStats() { return albumStatsMap; }
-    public Map<String, Integer> getPodcastStats() { return podcastStatsMap; }
-}
+    // What the rankings hold once every one has been asked for. The stats cache estimates a session
+    // once, when it is put, so the rankings built later are counted in full up front.
+    private long rankingsRetainedBytes() {
+        long trackOrders = 0, artistOrders = 0, albumOrders = 0;
+        for (RankBy by : RankBy.values()) {
+            if (trackOrder(by) != null) trackOrders++;
+            if (artistOrder(by) != null) artistOrders++;
+            if (albumOrder(by) != null) albumOrders++;
+        }
+        long bytes = (trackOrders * trackStatsMap.size() + artistOrders * artistStatsMap.size()
+                + albumOrders * albumStatsMap.size()) * HeapEstimate.REFERENCE;
+        // The podcast ranking sorts entries of its own, with names looked up from the dictionary
+        return bytes + podcastCounts.size() * (HeapEstimate.REFERENCE + HeapEstimate.MAP_ENTRY);
+    }
 
+    public Map<String, TrackStats> getTrackStats() { return Collections.unmodifiableMap(trackStatsMap); }
+    public Map<String, ArtistStats> getArtistStats() { return Collections.unmodifiableMap(artistStatsMap); }
+    public Map<String, AlbumStats> getAlbumStats() { return Collections.unmodifiableMap(albumStatsMap); }
+
+    public Map<String, Integer> getPodcastStats() {
+        Map<String, Integer> podcasts = new LinkedHashMap<>();
+        for (int i = 0; i < podcastCounts.size(); i++) {
+            podcasts.put(store.getStrings().valueOf((int) podcastCounts.keyAt(i)), podcastCounts.valueAt(i));
+        }
+        return podcasts;
+    }
+
+    // Ranked pages: entries offset to offset + limit of the map sorted by the given order, ties kept
+    // in the map's own order. Sorting happens once per map and order; a page then costs O(limit).
+    public Map<String, TrackStats> getTrackStats(RankBy by, int offset, int limit) {
+        return page("tracks", () -> trackStatsMap, by, require(trackOrder(by), "Tracks", by), offset, limit);
+    }
+
+    public Map<String, ArtistStats> getArtistStats(RankBy by, int offset, int limit) {
+        return page("artists", () -> artistStatsMap, by, require(artistOrder(by), "Artists", by), offset, limit);
+    }
+
+    public Map<String, AlbumStats> getAlbumStats(RankBy by, int offset, int limit) {
+        return page("albums", () -> albumStatsMap, by, require(albumOrder(by), "Albums", by), offset, limit);
+    }
+
+    public Map<String, Integer> getPodcastStats(RankBy by, int offset, int limit) {
+        Comparator<Map.Entry<String, Integer>> order = by == RankBy.STREAMS
+                ? Map.Entry.<String, Integer>comparingByValue().reversed() : null;
+        return page("podcasts", this::getPodcastStats, by, require(order, "Podcasts", by), offset, limit);
+    }
+
+    // All four maps ranked alike; a map that cannot be ranked by the given order is ranked by streams
+    public Map<String, Object> getTopStats(RankBy by, int offset, int limit) {
+        Map<String, Object> top = new LinkedHashMap<>();
+        top.put("trackStats", getTrackStats(trackOrder(by) != null ? by : RankBy.STREAMS, offset, limit));
+        top.put("artistStats", getArtistStats(artistOrder(by) != null ? by : RankBy.STREAMS, offset, limit));
+        top.put("albumStats", getAlbumStats(albumOrder(by) != null ? by : RankBy.STREAMS, offset, limit));
+        top.put("podcastStats", getPodcastStats(RankBy.STREAMS, offset, limit));
+        return top;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <V> Map<String, V> page(String name, Supplier<Map<String, V>> stats, RankBy by,
+                                    Comparator<Map.Entry<String, V>> order, int offset, int limit) {
+        List<Map.Entry<String, V>> ranked = (List<Map.Entry<String, V>>) rankings.computeIfAbsent(name + ":" + by, key -> {
+            List<Map.Entry<String, V>> entries = new ArrayList<>(stats.get().entrySet());
+            entries.sort(order);
+            return entries;
+        });
+        Map<String, V> page = new LinkedHashMap<>();
+        for (int i = offset; i < ranked.size() && i - offset < limit; i++) {
+            page.put(ranked.get(i).getKey(), ranked.get(i).getValue());
+        }
+        return Collections.unmodifiableMap(page);
+    }
+
+    private static <V> Comparator<Map.Entry<String, V>> require(Comparator<Map.Entry<String, V>> order, String what, RankBy by) {
+        if (order == null) {
+            throw new IllegalArgumentException(what + " cannot be ranked by " + by.name().toLowerCase(Locale.ROOT));
+        }
+        return order;
+    }
+
+    private static Comparator<Map.Entry<String, TrackStats>> trackOrder(RankBy by) {
+        return switch (by) {
+            case STREAMS -> largestFirst(stats -> stats.streamCount);
+            case SKIPS -> largestFirst(stats -> stats.skipCount);
+            case TIME -> largestFirst(stats -> stats.rawTotalTimeListened);
+            case FIRST_PLAYED -> earliestFirst(stats -> stats.firstPlayedDate);
+            default -> null;
+        };
+    }
+
+    private static Comparator<Map.Entry<String, ArtistStats>> artistOrder(RankBy by) {
+        return switch (by) {
+            case STREAMS -> largestFirst(stats -> stats.streamCount);
+            case SKIPS -> largestFirst(stats -> stats.skipCount);
+            case FIRST_PLAYED -> earliestFirst(stats -> stats.firstPlayedDate);
+            case UNIQUE_STREAMS -> largestFirst(stats -> stats.uniqueStreamsSeen.count());
+            default -> null;
+        };
+    }
+
+    private static Comparator<Map.Entry<String, AlbumStats>> albumOrder(RankBy by) {
+        return switch (by) {
+            case STREAMS -> largestFirst(stats -> stats.streamCount);
+            case SKIPS -> largestFirst(stats -> stats.skipCount);
+            case TIME -> largestFirst(stats -> stats.rawMsPlayed);
+            case FIRST_PLAYED -> earliestFirst(stats -> stats.firstPlayedDate);
+            default -> null;
+        };
+    }
+
+    private static <V> Comparator<Map.Entry<String, V>> largestFirst(ToLongFunction<V> key) {
+        return (a, b) -> Long.compare(key.applyAsLong(b.getValue()), key.applyAsLong(a.getValue()));
+    }
+
+    private static <V> Comparator<Map.Entry<String, V>> earliestFirst(ToLongFunction<V> epochMillis) {
+        return Comparator.comparingLong(entry -> {
+            long value = epochMillis.applyAsLong(entry.getValue());
+            return value == SpotifyTimestampCodec.NONE ? Long.MAX_VALUE : value;
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package spotify.model;
 
 import spotify.util.SpotifyTimeMapConverter;
+import spotify.util.SpotifyTimestampCodec;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -13,11 +14,13 @@ public class TrackStats {
     int streamCount = 0;
     int skipCount = 0;
     int rawTotalTimeListened = 0;
-    String firstPlayedDate = null;
+    // Epoch millis, SpotifyTimestampCodec.NONE until known
+    long firstPlayedDate;
+    long firstStreamedDate = SpotifyTimestampCodec.NONE;
     List<SpotifyPlaybackEntry> playbackHistory = new ArrayList<>();
 
 
-    public TrackStats(String trackName, String artist, String album, String playedAt, SpotifyPlaybackEntry entry) {
+    public TrackStats(String trackName, String artist, String album, long playedAt, SpotifyPlaybackEntry entry) {
         this.trackName = trackName;
         this.artist = artist;
         this.album = album;
@@ -25,12 +28,27 @@ public class TrackStats {
 //        this.playbackHistory.add(entry);
     }
 
-    public void addStream(String playedAt, SpotifyPlaybackEntry entry) {
+    private TrackStats(TrackStats other) {
+        this.trackName = other.trackName;
+        this.artist = other.artist;
+        this.album = other.album;
+        this.streamCount = other.streamCount;
+        this.skipCount = other.skipCount;
+        this.rawTotalTimeListened = other.rawTotalTimeListened;
+        this.firstPlayedDate = other.firstPlayedDate;
+        this.firstStreamedDate = other.firstStreamedDate;
+        this.playbackHistory = new ArrayList<>(other.playbackHistory);
+    }
+
+    TrackStats copy() {
+        return new TrackStats(this);
+    }
+
+    public void addStream(long playedAt, SpotifyPlaybackEntry entry) {
         streamCount++;
         rawTotalTimeListened += entry.getMsPlayed();
-        if (firstPlayedDate == null || playedAt.compareTo(firstPlayedDate) < 0) {
-            firstPlayedDate = playedAt;
-        }
+        firstPlayedDate = StatsMerging.earlier(firstPlayedDate, playedAt);
+        firstStreamedDate = StatsMerging.earlier(firstStreamedDate, playedAt);
 //            playbackHistory.add(entry);
     }
 
@@ -38,13 +56,21 @@ public class TrackStats {
         skipCount++;
     }
 
+    void merge(TrackStats other) {
+        streamCount += other.streamCount;
+        skipCount += other.skipCount;
+        rawTotalTimeListened += other.rawTotalTimeListened;
+        // other's constructor date is a first sighting that sequentially would have come after ours
+        firstPlayedDate = StatsMerging.earlier(firstPlayedDate, other.firstStreamedDate);
+        firstStreamedDate = StatsMerging.earlier(firstStreamedDate, other.firstStreamedDate);
+    }
+
     public String getTrackName() { return trackName; }
     public String getArtist() { return artist; }
     public String getAlbum() { return album; }
     public int getStreamCount() { return streamCount; }
     public int getSkipCount() { return skipCount; }
     public Map<String, Integer> getTotalTimeListened() { return SpotifyTimeMapConverter.convertMillisToTimeMap(rawTotalTimeListened); }
-    public String getFirstPlayedDate() { return firstPlayedDate; }
+    public String getFirstPlayedDate() { return StatsMerging.format(firstPlayedDate); }
     public List<SpotifyPlaybackEntry> getPlaybackHistory() { return playbackHistory; }
 }
-
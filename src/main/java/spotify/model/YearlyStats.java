@@ -1,37 +1,62 @@
 package spotify.model;
 
-import java.util.ArrayList;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class YearlyStats {
 
     public int streams = 0;
-    public double musicHours = 0;
+    long rawMusicMs = 0;
     public int uniqueStreams = 0;
     public int podcastPlays = 0;
-    public double podcastHours = 0;
-    public Map<String, List<SpotifyPlaybackEntry>> entriesOfTheYear = new HashMap<>();
+    long rawPodcastMs = 0;
+    // Paged out through /api/year-entries rather than with the yearly stats
+    @JsonIgnore
+    public Map<String, EntryList> entriesOfTheYear = new HashMap<>();
+
 
+    YearlyStats copy() {
+        YearlyStats copy = new YearlyStats();
+        copy.streams = streams;
+        copy.rawMusicMs = rawMusicMs;
+        copy.uniqueStreams = uniqueStreams;
+        copy.podcastPlays = podcastPlays;
+        copy.rawPodcastMs = rawPodcastMs;
+        entriesOfTheYear.forEach((year, entries) -> copy.entriesOfTheYear.put(year, entries.copy()));
+        return copy;
+    }
 
     public void addPlay(int ms, boolean uniquePlay, String year, SpotifyPlaybackEntry entry) {
         streams++;
-        musicHours += ms / 1000.0 / 60.0 / 60.0;
+        rawMusicMs += ms;
         if (uniquePlay) {
             uniqueStreams++;
         }
         entriesOfTheYear
-                .computeIfAbsent(year, y -> new ArrayList<>())
-                .add(entry);
+                .computeIfAbsent(year, y -> new EntryList(entry.getStore()))
+                .addRef(entry.getRef());
     }
 
     public void addPodcastPlay(int ms, String year, SpotifyPlaybackEntry entry) {
         podcastPlays++;
-        podcastHours += ms / 1000.0 / 60.0 / 60.0;
+        rawPodcastMs += ms;
         entriesOfTheYear
-                .computeIfAbsent(year, y -> new ArrayList<>())
-                .add(entry);
+                .computeIfAbsent(year, y -> new EntryList(entry.getStore()))
+                .addRef(entry.getRef());
     }
-}
 
+    void merge(YearlyStats other) {
+        streams += other.streams;
+        rawMusicMs += other.rawMusicMs;
+        uniqueStreams += other.uniqueStreams;
+        podcastPlays += other.podcastPlays;
+        rawPodcastMs += other.rawPodcastMs;
+        other.entriesOfTheYear.forEach((year, entries) ->
+                entriesOfTheYear.computeIfAbsent(year, y -> new EntryList(entries.getStore())).addAll(entries, 0));
+    }
+
+    public double getMusicHours() { return rawMusicMs / 1000.0 / 60.0 / 60.0; }
+    public double getPodcastHours() { return rawPodcastMs / 1000.0 / 60.0 / 60.0; }
+}
@@ -1,38 +1,108 @@
 package spotify.model;
 
-import java.time.ZonedDateTime;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-public class YearlyStatsCollector {
+public class YearlyStatsCollector implements StatsCollector<YearlyStatsCollector> {
 
-    private final Map<String, YearlyStats> yearlyStatsMap = new LinkedHashMap<>();
-    private final Set<String> songsSeen = new HashSet<>();
+    // yearIndex maps each UTC year to its position in years and yearLabels
+    private IdIntMap yearIndex = new IdIntMap();
+    private final List<YearlyStats> years = new ArrayList<>();
+    private final List<String> yearLabels = new ArrayList<>();
+    private Map<String, YearlyStats> yearlyStatsMap = Map.of();
+    // Year each track uri id was first streamed in
+    private IdIntMap yearFirstSeen = new IdIntMap();
 
 
+    @Override
     public void processEntry(SpotifyPlaybackEntry entry) {
-        String timeStamp = entry.getTimestamp();
         int ms = entry.getMsPlayed();
         String track = entry.getSpotifyTrackUri();
         String podcast = entry.getPodcastName();
 
-        if((track != null && ms >= 30000) || (podcast != null && ms > 5000)) {
-            ZonedDateTime zdt = ZonedDateTime.parse(timeStamp);
-            String year = String.valueOf(zdt.getYear());
+        if(entry.getEpochDay() != SpotifyPlaybackEntry.NO_DAY && ((track != null && entry.isStream()) || entry.isPodcastPlay())) {
+            int year = entry.getYear();
+            int index = indexOf(year, null);
 
-            YearlyStats stats = yearlyStatsMap.computeIfAbsent(year, k -> new YearlyStats());
+            YearlyStats stats = years.get(index);
             if(track != null) {
-                boolean isUnique = songsSeen.add(track);
-                stats.addPlay(ms, isUnique, year, entry);
+                boolean isUnique = yearFirstSeen.putIfAbsent(entry.getTrackUriId(), year) == IdIntMap.MISSING;
+                stats.addPlay(ms, isUnique, yearLabels.get(index), entry);
             }
             if(podcast != null) {
-                stats.addPodcastPlay(ms, year, entry);
+                stats.addPodcastPlay(ms, yearLabels.get(index), entry);
             }
         }
     }
 
+    @Override
+    public void processBatch(SpotifyPlaybackEntry[] entries, int count) {
+        for (int i = 0; i < count; i++) {
+            processEntry(entries[i]);
+        }
+    }
+
+    private int indexOf(int year, YearlyStats ifAbsent) {
+        int index = yearIndex.putIfAbsent(year, years.size());
+        if (index != IdIntMap.MISSING) return index;
+        years.add(ifAbsent != null ? ifAbsent : new YearlyStats());
+        yearLabels.add(String.valueOf(year));
+        return years.size() - 1;
+    }
+
+    @Override
+    public void combine(YearlyStatsCollector other) {
+        // A track other counted as new may already have been heard in an earlier part
+        for (int i = 0; i < other.yearFirstSeen.size(); i++) {
+            int year = other.yearFirstSeen.valueAt(i);
+            if (yearFirstSeen.putIfAbsent(other.yearFirstSeen.keyAt(i), year) != IdIntMap.MISSING) {
+                other.years.get(other.yearIndex.get(year)).uniqueStreams--;
+            }
+        }
+        for (int i = 0; i < other.yearIndex.size(); i++) {
+            YearlyStats stats = other.years.get(i);
+            YearlyStats existing = years.get(indexOf((int) other.yearIndex.keyAt(i), stats));
+            if (existing != stats) existing.merge(stats);
+        }
+    }
+
+    @Override
+    public void finalizeStats() {
+        Map<String, YearlyStats> finalized = new LinkedHashMap<>();
+        for (int i = 0; i < years.size(); i++) {
+            finalized.put(yearLabels.get(i), years.get(i));
+        }
+        yearlyStatsMap = Collections.unmodifiableMap(finalized);
+    }
+
+    @Override
+    public YearlyStatsCollector copy() {
+        YearlyStatsCollector copy = new YearlyStatsCollector();
+        copy.yearIndex = yearIndex.copy();
+        for (YearlyStats stats : years) {
+            copy.years.add(stats.copy());
+        }
+        copy.yearLabels.addAll(yearLabels);
+        copy.yearFirstSeen = yearFirstSeen.copy();
+        copy.finalizeStats();
+        return copy;
+    }
+
+    @Override
+    public long estimatedRetainedBytes() {
+        long bytes = yearFirstSeen.estimatedRetainedBytes();
+        for (YearlyStats stats : years) {
+            bytes += HeapEstimate.MAP_ENTRY + HeapEstimate.STATS_OBJECT;
+            for (EntryList entries : stats.entriesOfTheYear.values()) {
+                bytes += entries.size() * Long.BYTES;
+            }
+        }
+        return bytes;
+    }
+
     public Map<String, YearlyStats> getYearlyStatsMap() {
         return yearlyStatsMap;
     }
@@ -0,0 +1,130 @@
+package spotify.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Splits a JSON array of objects into byte ranges of whole records, so one large history file can
+// be parsed by several workers. Boundaries come from a structural scan that tracks nesting and
+// skips strings with their escapes; it only looks at bytes, which is far cheaper than parsing.
+public final class JsonArraySplitter {
+
+    // Records from start up to end, end just past the last record's closing brace
+    public record Range(int start, int end) {}
+
+    private static volatile long minRangeBytes = 8L << 20;
+
+    private JsonArraySplitter() {}
+
+    // Files are only split into ranges of at least this many bytes. Set once at startup.
+    public static void configure(long minRangeBytes) {
+        JsonArraySplitter.minRangeBytes = Math.max(1, minRangeBytes);
+    }
+
+    public static long minRangeBytes() {
+        return minRangeBytes;
+    }
+
+    // At most ranges ranges of about equal size, in file order. Null when json is not an array
+    // holding only objects, or does not end; the caller should then parse it whole, which reports
+    // what is wrong with it.
+    public static List<Range> split(ByteBuffer json, int ranges) {
+        int limit = json.limit();
+        int at = skipByteOrderMark(json);
+        while (at < limit && isWhitespace(json.get(at))) at++;
+        if (at >= limit || json.get(at) != '[') return null;
+
+        List<Range> split = new ArrayList<>(ranges);
+        long target = (long) limit / ranges;
+        int depth = 0;
+        boolean inString = false;
+        int rangeStart = -1;
+        int lastEnd = -1;
+        for (int i = at + 1; i < limit; i++) {
+            byte b = json.get(i);
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (b) {
+                case '"' -> {
+                    if (depth == 0) return null;
+                    inString = true;
+                }
+                case '{', '[' -> {
+                    if (depth == 0) {
+                        if (b != '{') return null;
+                        if (rangeStart < 0) {
+                            rangeStart = i;
+                        } else if (i >= target && split.size() < ranges - 1) {
+                            split.add(new Range(rangeStart, lastEnd));
+                            rangeStart = i;
+                            target = (long) limit * (split.size() + 1) / ranges;
+                        }
+                    }
+                    depth++;
+                }
+                case '}', ']' -> {
+                    if (depth == 0) {
+                        if (b != ']') return null;
+                        if (rangeStart >= 0) split.add(new Range(rangeStart, lastEnd));
+                        return split;
+                    }
+                    if (--depth == 0) lastEnd = i + 1;
+                }
+                default -> {
+                    if (depth == 0 && b != ',' && !isWhitespace(b)) return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    // The range's records read as an array of their own
+    public static InputStream rangeAsArray(ByteBuffer json, Range range) {
+        ByteBuffer records = json.duplicate().limit(range.end()).position(range.start());
+        return new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(new byte[]{'['}), stream(records), new ByteArrayInputStream(new byte[]{']'}))));
+    }
+
+    // Reads the buffer's remaining bytes without copying them to the heap first
+    public static InputStream stream(ByteBuffer buffer) {
+        ByteBuffer bytes = buffer.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] target, int offset, int length) {
+                if (length == 0) return 0;
+                if (!bytes.hasRemaining()) return -1;
+                int count = Math.min(length, bytes.remaining());
+                bytes.get(target, offset, count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return bytes.remaining();
+            }
+        };
+    }
+
+    private static int skipByteOrderMark(ByteBuffer json) {
+        return json.limit() >= 3 && json.get(0) == (byte) 0xEF && json.get(1) == (byte) 0xBB && json.get(2) == (byte) 0xBF ? 3 : 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
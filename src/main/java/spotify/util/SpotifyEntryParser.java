@@ -1,8 +1,12 @@
 package spotify.util;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import spotify.model.SpotifyPlaybackEntry;
 import org.json.JSONObject;
 
+import java.io.IOException;
+
 public class SpotifyEntryParser {
 
     public static SpotifyPlaybackEntry fromJson(JSONObject json) {
@@ -27,4 +31,52 @@ public class SpotifyEntryParser {
         entry.setPodcastEpisodeName(json.optString("episode_name", null));
         return entry;
     }
+
+    // Expects the parser on the record's START_OBJECT and leaves it on the matching END_OBJECT.
+    // Fields nothing reads (ip_addr, username, user_agent_decrypted, ...) are skipped unbuilt.
+    public static SpotifyPlaybackEntry fromParser(JsonParser parser) throws IOException {
+        return fromParser(parser, new SpotifyPlaybackEntry());
+    }
+
+    // Same as above but refills entry, so one instance can be reused for a whole file
+    public static SpotifyPlaybackEntry fromParser(JsonParser parser, SpotifyPlaybackEntry entry) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected start of playback entry but found " + parser.currentToken());
+        }
+
+        entry.clear();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "ts" -> entry.setTimestamp(text(parser, value));
+                case "platform" -> entry.setPlatform(text(parser, value));
+                case "ms_played" -> entry.setMsPlayed(parser.getValueAsInt(0));
+                case "conn_country" -> entry.setCountry(text(parser, value));
+                case "master_metadata_track_name" -> entry.setTrackName(text(parser, value));
+                case "master_metadata_album_artist_name" -> entry.setArtistName(text(parser, value));
+                case "master_metadata_album_album_name" -> entry.setAlbumName(text(parser, value));
+                case "spotify_track_uri" -> entry.setSpotifyTrackUri(text(parser, value));
+                case "reason_start" -> entry.setReasonStart(text(parser, value));
+                case "reason_end" -> entry.setReasonEnd(text(parser, value));
+                case "shuffle" -> entry.setShuffle(parser.getValueAsBoolean(false));
+                case "skipped" -> entry.setSkipped(parser.getValueAsBoolean(false));
+                case "offline" -> entry.setOffline(parser.getValueAsBoolean(false));
+                case "incognito_mode" -> entry.setIncognitoMode(parser.getValueAsBoolean(false));
+                case "episode_show_name" -> entry.setPodcastName(text(parser, value));
+                case "episode_name" -> entry.setPodcastEpisodeName(text(parser, value));
+                default -> parser.skipChildren();
+            }
+        }
+        return entry;
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getValueAsString();
+    }
 }
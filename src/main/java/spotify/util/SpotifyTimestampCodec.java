@@ -0,0 +1,138 @@
+package spotify.util;
+
+import java.time.Instant;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+// Converts between the export's "2021-03-04T05:06:07Z" timestamps and epoch millis. That fixed UTC
+// format is decoded and encoded by hand; anything else falls back to java.time.
+public final class SpotifyTimestampCodec {
+
+    // Stands for a missing or unparseable timestamp
+    public static final long NONE = Long.MIN_VALUE;
+    public static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private static final int CANONICAL_LENGTH = 20;
+
+    private SpotifyTimestampCodec() {}
+
+    public static long toEpochMillis(String timestamp) {
+        if (timestamp == null) return NONE;
+        long millis = parseCanonical(timestamp);
+        if (millis != NONE) return millis;
+        try {
+            return ZonedDateTime.parse(timestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return NONE;
+        }
+    }
+
+    // True if timestamp has the export's exact shape, so toString(toEpochMillis(timestamp)) gives it back
+    public static boolean isCanonical(String timestamp) {
+        return timestamp.length() == CANONICAL_LENGTH && parseCanonical(timestamp) != NONE;
+    }
+
+    public static String toString(long epochMillis) {
+        long day = epochDay(epochMillis);
+        long civil = civil(day);
+        long year = civil >> 9;
+        if (epochMillis % 1000 != 0 || year < 0 || year > 9999) {
+            return Instant.ofEpochMilli(epochMillis).toString();
+        }
+
+        int secondOfDay = (int) ((epochMillis - day * MILLIS_PER_DAY) / 1000);
+        char[] text = new char[CANONICAL_LENGTH];
+        put(text, 0, (int) year, 4);
+        text[4] = '-';
+        put(text, 5, (int) (civil >> 5 & 0xF), 2);
+        text[7] = '-';
+        put(text, 8, (int) (civil & 0x1F), 2);
+        text[10] = 'T';
+        put(text, 11, secondOfDay / 3600, 2);
+        text[13] = ':';
+        put(text, 14, secondOfDay / 60 % 60, 2);
+        text[16] = ':';
+        put(text, 17, secondOfDay % 60, 2);
+        text[19] = 'Z';
+        return new String(text);
+    }
+
+    public static long epochDay(long epochMillis) {
+        return Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+    }
+
+    public static int yearOfEpochDay(long epochDay) {
+        return (int) (civil(epochDay) >> 9);
+    }
+
+    // Months counted from year 0, so consecutive months get consecutive numbers
+    public static long epochMonth(long epochDay) {
+        long civil = civil(epochDay);
+        return (civil >> 9) * 12 + (civil >> 5 & 0xF) - 1;
+    }
+
+    public static long epochDayOfMonth(long epochMonth) {
+        return epochDayOf((int) Math.floorDiv(epochMonth, 12), Math.floorMod(epochMonth, 12) + 1, 1);
+    }
+
+    // Civil calendar conversions after Howard Hinnant's civil_from_days / days_from_civil.
+    // The date comes back packed as year << 9 | month << 5 | day.
+    private static long civil(long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    private static long epochDayOf(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static long parseCanonical(String text) {
+        if (text.length() != CANONICAL_LENGTH || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':' || text.charAt(19) != 'Z') {
+            return NONE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NONE;
+        }
+        return epochDayOf(year, month, day) * MILLIS_PER_DAY + (hour * 3600 + minute * 60 + second) * 1000L;
+    }
+
+    private static int digits(String text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void put(char[] text, int at, int value, int width) {
+        for (int i = at + width - 1; i >= at; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
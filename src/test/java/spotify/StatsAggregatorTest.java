@@ -0,0 +1,117 @@
+package spotify;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spotify.util.JsonArraySplitter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsAggregatorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path folder;
+
+    @AfterEach
+    void resetSplitting() {
+        JsonArraySplitter.configure(8L << 20);
+    }
+
+    @Test
+    void parallelStatsEqualSequential() throws IOException {
+        writeHistory(folder, 4, 3000, 1);
+
+        JsonNode sequential = MAPPER.valueToTree(StatsAggregator.computeStats(folder.toString()));
+        JsonNode parallel = MAPPER.valueToTree(StatsAggregator.computeStats(folder.toString(), new ForkJoinPool(4)));
+
+        assertTrue(sequential.path("topStats").path("trackStats").size() > 100);
+        assertTrue(sequential.equals(NUMERICALLY, parallel), "parallel stats differ from sequential ones");
+    }
+
+    @Test
+    void splitFilesGiveTheSameStats() throws IOException {
+        writeHistory(folder, 2, 5000, 2);
+        JsonNode sequential = MAPPER.valueToTree(StatsAggregator.computeStats(folder.toString()));
+
+        // Small enough that every file is parsed as several ranges on different workers
+        JsonArraySplitter.configure(64 << 10);
+        JsonNode split = MAPPER.valueToTree(StatsAggregator.computeStats(folder.toString(), new ForkJoinPool(4)));
+
+        assertTrue(sequential.equals(NUMERICALLY, split), "split stats differ from sequential ones");
+    }
+
+    @Test
+    void parallelCountsEveryEntryOnce() throws IOException {
+        writeHistory(folder, 3, 1000, 3);
+        StatsAggregator.CombinedStatsCollector stats = StatsAggregator.computeStats(folder.toString(), new ForkJoinPool(3));
+        assertEquals(3000, stats.getEntryCount());
+        assertTrue(stats.isComplete());
+    }
+
+    // Sums of doubles may differ in their last bits when added in another order
+    private static final Comparator<JsonNode> NUMERICALLY = (a, b) -> {
+        if (a.isNumber() && b.isNumber()) {
+            double x = a.doubleValue();
+            double y = b.doubleValue();
+            return Math.abs(x - y) <= 1e-9 * Math.max(1, Math.abs(x)) ? 0 : 1;
+        }
+        return a.equals(b) ? 0 : 1;
+    };
+
+    // Export-shaped files of music plays, podcast episodes and the odd incomplete record, spread over
+    // a few years so every collector sees several days, months and years
+    static void writeHistory(Path folder, int files, int entriesPerFile, long seed) throws IOException {
+        Random random = new Random(seed);
+        long timestamp = 1_546_300_800_000L; // 2019-01-01T00:00:00Z
+        for (int file = 0; file < files; file++) {
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < entriesPerFile; i++) {
+                timestamp += 1000L * (30 + random.nextInt(20_000));
+                if (i > 0) json.append(',');
+                json.append("{\"ts\":\"").append(java.time.Instant.ofEpochMilli(timestamp)).append('"')
+                        .append(",\"platform\":\"").append(random.nextBoolean() ? "iOS 14" : "Android OS").append('"')
+                        .append(",\"ms_played\":").append(random.nextInt(300_000))
+                        .append(",\"conn_country\":\"").append(random.nextInt(4) == 0 ? "CA" : "US").append('"');
+                int kind = random.nextInt(20);
+                if (kind == 0) {
+                    int show = random.nextInt(5);
+                    json.append(",\"master_metadata_track_name\":null,\"master_metadata_album_artist_name\":null")
+                            .append(",\"master_metadata_album_album_name\":null,\"spotify_track_uri\":null")
+                            .append(",\"episode_name\":\"Episode ").append(random.nextInt(40)).append('"')
+                            .append(",\"episode_show_name\":\"Show ").append(show).append('"');
+                } else if (kind == 1) {
+                    json.append(",\"master_metadata_track_name\":null,\"master_metadata_album_artist_name\":null")
+                            .append(",\"master_metadata_album_album_name\":null,\"spotify_track_uri\":null");
+                } else {
+                    // Skewed towards the first few, as real listening is
+                    int artist = (int) (Math.pow(random.nextDouble(), 2) * 60);
+                    int album = random.nextInt(4);
+                    int track = random.nextInt(12);
+                    json.append(",\"master_metadata_track_name\":\"Song ").append(track).append('"')
+                            .append(",\"master_metadata_album_artist_name\":\"Artist ").append(artist).append('"')
+                            .append(",\"master_metadata_album_album_name\":\"Artist ").append(artist).append(" Album ").append(album).append('"')
+                            .append(",\"spotify_track_uri\":\"spotify:track:").append(artist).append('-').append(album).append('-').append(track).append('"');
+                }
+                json.append(",\"reason_start\":\"").append(random.nextBoolean() ? "trackdone" : "clickrow").append('"')
+                        .append(",\"reason_end\":\"").append(random.nextInt(3) == 0 ? "fwdbtn" : "trackdone").append('"')
+                        .append(",\"shuffle\":").append(random.nextBoolean())
+                        .append(",\"skipped\":").append(random.nextInt(5) == 0)
+                        .append(",\"offline\":false,\"incognito_mode\":false}");
+            }
+            json.append(']');
+            Files.writeString(folder.resolve("Streaming_History_Audio_" + file + ".json"), json);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package spotify.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogCounterTest {
+
+    @Test
+    void smallSetsAreCountedExactly() {
+        HyperLogLogCounter counter = new HyperLogLogCounter(14);
+        for (int id = 0; id < 500; id++) {
+            counter.add(id * 7919L);
+            counter.add(id * 7919L);
+        }
+        // Still kept as ids, smaller than the register array would be
+        assertTrue(counter.estimatedRetainedBytes() < 1 << 14);
+        assertEquals(500, counter.count());
+    }
+
+    @Test
+    void errorStaysWithinBounds() {
+        for (int precision : new int[] {10, 14}) {
+            // Three standard errors, 1.04 / sqrt(2^precision) each
+            double bound = 3 * 1.04 / Math.sqrt(1 << precision);
+            for (int distinct : new int[] {5_000, 50_000, 500_000}) {
+                HyperLogLogCounter counter = new HyperLogLogCounter(precision);
+                for (int id = 0; id < distinct; id++) {
+                    counter.add(id);
+                    if (id % 3 == 0) counter.add(id);
+                }
+                double error = Math.abs(counter.count() - distinct) / (double) distinct;
+                assertTrue(error <= bound, "precision " + precision + ", " + distinct + " ids: error " + error);
+            }
+        }
+    }
+
+    @Test
+    void mergeEqualsUnion() {
+        HyperLogLogCounter first = new HyperLogLogCounter(12);
+        HyperLogLogCounter second = new HyperLogLogCounter(12);
+        HyperLogLogCounter union = new HyperLogLogCounter(12);
+        for (int id = 0; id < 60_000; id++) {
+            first.add(id);
+            union.add(id);
+        }
+        for (int id = 40_000; id < 120_000; id++) {
+            second.add(id);
+            union.add(id);
+        }
+        first.addAll(second);
+        assertEquals(union.count(), first.count());
+    }
+
+    @Test
+    void mergeOfSparseAndDenseEqualsUnion() {
+        HyperLogLogCounter small = new HyperLogLogCounter(12);
+        HyperLogLogCounter large = new HyperLogLogCounter(12);
+        HyperLogLogCounter union = new HyperLogLogCounter(12);
+        for (int id = 0; id < 100; id++) {
+            small.add(id * 1_000L);
+            union.add(id * 1_000L);
+        }
+        for (int id = 0; id < 50_000; id++) {
+            large.add(id);
+            union.add(id);
+        }
+
+        HyperLogLogCounter smallIntoLarge = (HyperLogLogCounter) large.copy();
+        smallIntoLarge.addAll(small);
+        HyperLogLogCounter largeIntoSmall = (HyperLogLogCounter) small.copy();
+        largeIntoSmall.addAll(large);
+
+        assertEquals(union.count(), smallIntoLarge.count());
+        assertEquals(union.count(), largeIntoSmall.count());
+        // The copies were merged into, not the originals
+        assertEquals(100, small.count());
+    }
+
+    @Test
+    void mergingAnotherPrecisionIsRejected() {
+        HyperLogLogCounter counter = new HyperLogLogCounter(12);
+        assertThrows(IllegalArgumentException.class, () -> counter.addAll(new HyperLogLogCounter(14)));
+        assertThrows(IllegalArgumentException.class, () -> counter.addAll(new ExactDistinctCounter()));
+    }
+}
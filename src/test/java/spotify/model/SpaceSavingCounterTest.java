@@ -0,0 +1,160 @@
+package spotify.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingCounterTest {
+
+    @Test
+    void countsExactlyUntilFull() {
+        SpaceSavingCounter counter = new SpaceSavingCounter(64);
+        for (int key = 0; key < 40; key++) {
+            counter.add(key, key + 1);
+            counter.add(key, 1);
+        }
+        Map<Long, Integer> counts = counts(counter);
+        assertEquals(40, counts.size());
+        for (int key = 0; key < 40; key++) {
+            assertEquals(key + 2, counts.get((long) key));
+        }
+        for (int index : counter.topIndices(64)) {
+            assertEquals(0, counter.errorAt(index));
+        }
+    }
+
+    @Test
+    void keepsEveryHeavyHitterAndNeverUndercounts() {
+        Random random = new Random(11);
+        for (int capacity : new int[] {8, 32, 128}) {
+            SpaceSavingCounter counter = new SpaceSavingCounter(capacity);
+            Map<Long, Integer> truth = new HashMap<>();
+            long total = stream(random, 20_000, 2_000, counter, truth);
+            assertBounds(counter, truth, total, capacity);
+        }
+    }
+
+    @Test
+    void mergedSummariesKeepTheGuarantees() {
+        Random random = new Random(23);
+        for (int capacity : new int[] {8, 32, 128}) {
+            SpaceSavingCounter first = new SpaceSavingCounter(capacity);
+            SpaceSavingCounter second = new SpaceSavingCounter(capacity);
+            Map<Long, Integer> truth = new HashMap<>();
+            long total = stream(random, 10_000, 1_500, first, truth) + stream(random, 10_000, 3_000, second, truth);
+            first.addAll(second);
+            assertBounds(first, truth, total, capacity);
+        }
+    }
+
+    @Test
+    void mergeChargesMissingKeysTheOtherSummarysSmallestCount() {
+        SpaceSavingCounter full = new SpaceSavingCounter(8);
+        for (int key = 1; key <= 8; key++) {
+            full.add(key, 9 + key);
+        }
+        SpaceSavingCounter partial = new SpaceSavingCounter(8);
+        partial.add(1, 5);
+        partial.add(100, 20);
+
+        full.addAll(partial);
+
+        Map<Long, Integer> counts = counts(full);
+        Map<Long, Integer> errors = errors(full);
+        // Key 100 may have been counted in the full summary up to its smallest count, 10
+        assertEquals(30, counts.get(100L));
+        assertEquals(10, errors.get(100L));
+        // Key 1 is in both; the partial summary was not full, so nothing is added for missing keys
+        assertEquals(15, counts.get(1L));
+        assertEquals(0, errors.get(1L));
+        assertEquals(17, counts.get(8L));
+        // Nine candidates for eight slots: the smallest, key 2 at 11, is dropped
+        assertEquals(8, counts.size());
+        assertFalse(counts.containsKey(2L));
+    }
+
+    @Test
+    void topIndicesBreakTiesByFirstCounted() {
+        SpaceSavingCounter counter = new SpaceSavingCounter(8);
+        counter.add(30, 2);
+        counter.add(10, 5);
+        counter.add(20, 2);
+        int[] top = counter.topIndices(3);
+        assertEquals(10, counter.keyAt(top[0]));
+        assertEquals(30, counter.keyAt(top[1]));
+        assertEquals(20, counter.keyAt(top[2]));
+    }
+
+    @Test
+    void slotsGrowWithTheKeys() {
+        SpaceSavingCounter few = new SpaceSavingCounter(SpaceSavingCounter.MAX_CAPACITY);
+        few.add(1, 1);
+        SpaceSavingCounter many = new SpaceSavingCounter(SpaceSavingCounter.MAX_CAPACITY);
+        for (int key = 0; key < 10_000; key++) {
+            many.add(key, 1);
+        }
+        assertTrue(few.estimatedRetainedBytes() < 1024);
+        assertTrue(many.estimatedRetainedBytes() > few.estimatedRetainedBytes());
+        assertEquals(10_000, counts(many).size());
+    }
+
+    @Test
+    void mergingAnotherCapacityIsRejected() {
+        SpaceSavingCounter counter = new SpaceSavingCounter(8);
+        assertThrows(IllegalArgumentException.class, () -> counter.addAll(new SpaceSavingCounter(16)));
+        assertThrows(IllegalArgumentException.class, () -> counter.addAll(new ExactTopCounter()));
+    }
+
+    // A skewed stream, so a few keys are heavy and most are rare
+    private static long stream(Random random, int plays, int keys, TopCounter counter, Map<Long, Integer> truth) {
+        long total = 0;
+        for (int i = 0; i < plays; i++) {
+            long key = (long) (Math.pow(random.nextDouble(), 3) * keys);
+            int count = 1 + (random.nextInt(10) == 0 ? random.nextInt(4) : 0);
+            counter.add(key, count);
+            truth.merge(key, count, Integer::sum);
+            total += count;
+        }
+        return total;
+    }
+
+    // No count is below the true one nor more than its error above it, and every key counted more
+    // than total / capacity times is kept
+    private static void assertBounds(SpaceSavingCounter counter, Map<Long, Integer> truth, long total, int capacity) {
+        Map<Long, Integer> counts = counts(counter);
+        Map<Long, Integer> errors = errors(counter);
+        counts.forEach((key, count) -> {
+            int actual = truth.getOrDefault(key, 0);
+            assertTrue(count >= actual, "key " + key + " undercounted");
+            assertTrue(count - errors.get(key) <= actual, "key " + key + " error too small");
+        });
+        truth.forEach((key, actual) -> {
+            if (actual > total / capacity) {
+                assertTrue(counts.containsKey(key), "heavy hitter " + key + " with " + actual + " of " + total + " dropped");
+            }
+        });
+    }
+
+    private static Map<Long, Integer> counts(TopCounter counter) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int index : counter.topIndices(Integer.MAX_VALUE)) {
+            counts.put(counter.keyAt(index), counter.countAt(index));
+        }
+        return counts;
+    }
+
+    private static Map<Long, Integer> errors(TopCounter counter) {
+        Map<Long, Integer> errors = new HashMap<>();
+        for (int index : counter.topIndices(Integer.MAX_VALUE)) {
+            errors.put(counter.keyAt(index), counter.errorAt(index));
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,91 @@
+package spotify.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpotifyTimestampCodecTest {
+
+    // 1900-01-01 to 2200-01-01, so dates before 1970, century years and leap days are all covered
+    private static final long FROM = Instant.parse("1900-01-01T00:00:00Z").toEpochMilli();
+    private static final long TO = Instant.parse("2200-01-01T00:00:00Z").toEpochMilli();
+
+    @Test
+    void canonicalTimestampsRoundTrip() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            long millis = Math.floorDiv(FROM + (long) (random.nextDouble() * (TO - FROM)), 1000) * 1000;
+            String text = Instant.ofEpochMilli(millis).toString();
+            assertTrue(SpotifyTimestampCodec.isCanonical(text), text);
+            assertEquals(millis, SpotifyTimestampCodec.toEpochMillis(text), text);
+            assertEquals(text, SpotifyTimestampCodec.toString(millis));
+        }
+    }
+
+    @Test
+    void edgesOfDaysAndLeapYearsRoundTrip() {
+        for (String text : new String[] {
+                "1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "2000-02-29T12:00:00Z", "2024-02-29T23:59:59Z",
+                "2023-03-01T00:00:00Z", "1900-02-28T00:00:00Z", "2100-03-01T00:00:00Z", "0001-01-01T00:00:00Z",
+                "9999-12-31T23:59:59Z"}) {
+            long millis = SpotifyTimestampCodec.toEpochMillis(text);
+            assertEquals(Instant.parse(text).toEpochMilli(), millis, text);
+            assertEquals(text, SpotifyTimestampCodec.toString(millis));
+        }
+    }
+
+    @Test
+    void otherFormatsFallBackToJavaTime() {
+        assertFalse(SpotifyTimestampCodec.isCanonical("2021-03-04T07:06:07+02:00"));
+        assertEquals(Instant.parse("2021-03-04T05:06:07Z").toEpochMilli(),
+                SpotifyTimestampCodec.toEpochMillis("2021-03-04T07:06:07+02:00"));
+        assertFalse(SpotifyTimestampCodec.isCanonical("2021-03-04T05:06:07.250Z"));
+        assertEquals(Instant.parse("2021-03-04T05:06:07.250Z").toEpochMilli(),
+                SpotifyTimestampCodec.toEpochMillis("2021-03-04T05:06:07.250Z"));
+    }
+
+    @Test
+    void missingOrInvalidTimestampsAreNone() {
+        for (String text : new String[] {
+                null, "", "yesterday", "2021-13-04T05:06:07Z", "2021-02-29T05:06:07Z", "2021-03-04T24:00:00Z",
+                "2021-03-04T05:60:07Z", "2021-03-04 05:06:07Z", "2021-0a-04T05:06:07Z"}) {
+            assertEquals(SpotifyTimestampCodec.NONE, SpotifyTimestampCodec.toEpochMillis(text), text);
+            if (text != null) {
+                assertFalse(SpotifyTimestampCodec.isCanonical(text), text);
+            }
+        }
+    }
+
+    @Test
+    void fractionalAndOutOfRangeMillisPrintLikeInstant() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            long millis = FROM + (long) (random.nextDouble() * (TO - FROM));
+            assertEquals(Instant.ofEpochMilli(millis).toString(), SpotifyTimestampCodec.toString(millis));
+        }
+        long farFuture = Instant.parse("+12000-01-01T00:00:00Z").toEpochMilli();
+        assertEquals(Instant.ofEpochMilli(farFuture).toString(), SpotifyTimestampCodec.toString(farFuture));
+    }
+
+    @Test
+    void calendarFieldsMatchJavaTime() {
+        long firstDay = LocalDate.of(1890, 1, 1).toEpochDay();
+        long lastDay = LocalDate.of(2210, 12, 31).toEpochDay();
+        for (long day = firstDay; day <= lastDay; day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            long millis = day * SpotifyTimestampCodec.MILLIS_PER_DAY + 43_200_000L;
+            assertEquals(day, SpotifyTimestampCodec.epochDay(millis));
+            assertEquals(day - 1, SpotifyTimestampCodec.epochDay(day * SpotifyTimestampCodec.MILLIS_PER_DAY - 1));
+            assertEquals(date.getYear(), SpotifyTimestampCodec.yearOfEpochDay(day));
+            long month = SpotifyTimestampCodec.epochMonth(day);
+            assertEquals(date.getYear() * 12L + date.getMonthValue() - 1, month);
+            assertEquals(date.withDayOfMonth(1).toEpochDay(), SpotifyTimestampCodec.epochDayOfMonth(month));
+        }
+    }
+}